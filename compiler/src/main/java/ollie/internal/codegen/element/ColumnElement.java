@@ -25,6 +25,8 @@ import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
 import java.lang.annotation.Annotation;
 import java.util.HashMap;
 import java.util.List;
@@ -57,9 +59,12 @@ public class ColumnElement {
 	private TypeElement enclosingType;
 	private TypeElement deserializedType;
 	private TypeElement serializedType;
+	private TypeAdapterElement typeAdapterElement;
 	private String sqlType;
 
 	private boolean isModel;
+	private boolean isLazy;
+	private boolean isPrimitive;
 	private String modelTableName;
 
 	private Map<Class<? extends Annotation>, Annotation> annotations = Maps.newHashMap();
@@ -68,12 +73,30 @@ public class ColumnElement {
 		this.element = element;
 		this.column = element.getAnnotation(Column.class);
 		this.enclosingType = enclosingType;
-		this.deserializedType = registry.getElements().getTypeElement(element.asType().toString());
 
-		final TypeAdapterElement typeAdapterElement = registry.getTypeAdapterElement(deserializedType);
+		TypeMirror type = element.asType();
+		final TypeElement lazyElement = registry.getElements().getTypeElement("ollie.Lazy");
+		isLazy = registry.getTypes().isSameType(registry.getTypes().erasure(type),
+				registry.getTypes().erasure(lazyElement.asType()));
+		if (isLazy) {
+			final List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+			if (!typeArguments.isEmpty()) {
+				type = typeArguments.get(0);
+			}
+		}
+
+		// Primitive columns are described by their boxed types, which the generated code assigns by auto-boxing.
+		isPrimitive = type.getKind().isPrimitive();
+		if (isPrimitive) {
+			type = registry.getTypes().boxedClass((PrimitiveType) type).asType();
+		}
+
+		this.deserializedType = registry.getElements().getTypeElement(registry.getTypes().erasure(type).toString());
+
+		typeAdapterElement = registry.getTypeAdapterElement(deserializedType);
 		final TypeElement modelElement = registry.getElements().getTypeElement("ollie.Model");
 		final DeclaredType modelType = registry.getTypes().getDeclaredType(modelElement);
-		isModel = registry.getTypes().isAssignable(element.asType(), modelType);
+		isModel = registry.getTypes().isAssignable(type, modelType);
 
 		if (isModel) {
 			final Table table = deserializedType.getAnnotation(Table.class);
@@ -102,6 +125,14 @@ public class ColumnElement {
 		return isModel;
 	}
 
+	public boolean isLazy() {
+		return isLazy;
+	}
+
+	public boolean isPrimitive() {
+		return isPrimitive;
+	}
+
 	public String getFieldName() {
 		return element.getSimpleName().toString();
 	}
@@ -126,6 +157,18 @@ public class ColumnElement {
 		return serializedType.getQualifiedName().toString();
 	}
 
+	public Index getIndex() {
+		return (Index) annotations.get(Index.class);
+	}
+
+	public boolean isUnique() {
+		return annotations.containsKey(Unique.class);
+	}
+
+	public TypeAdapterElement getTypeAdapterElement() {
+		return typeAdapterElement;
+	}
+
 	public boolean requiresTypeAdapter() {
 		return !serializedType.getQualifiedName().equals(deserializedType.getQualifiedName());
 	}
@@ -17,6 +17,7 @@
 package ollie.internal.codegen.validator;
 
 import ollie.annotation.Column;
+import ollie.annotation.Index;
 import ollie.annotation.Table;
 import ollie.internal.codegen.Errors;
 import ollie.internal.codegen.Registry;
@@ -25,6 +26,8 @@ import ollie.internal.codegen.element.ColumnElement;
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
 import java.util.Set;
 
 import static javax.lang.model.element.ElementKind.CLASS;
@@ -53,6 +56,17 @@ public class ColumnValidator implements Validator {
 			return false;
 		}
 
+		if (isRawLazy(element)) {
+			messager.printMessage(ERROR, "Lazy columns must declare the referenced model type.", element);
+			return false;
+		}
+
+		Index index = element.getAnnotation(Index.class);
+		if (index != null && index.value().length > 0) {
+			messager.printMessage(ERROR, "@Index on a column must not declare columns.", element);
+			return false;
+		}
+
 		Column column = element.getAnnotation(Column.class);
 		Set<ColumnElement> existingColumns = registry.getColumnElements((TypeElement) enclosingElement);
 		for (ColumnElement existingColumn : existingColumns) {
@@ -64,4 +78,12 @@ public class ColumnValidator implements Validator {
 
 		return true;
 	}
+
+	private boolean isRawLazy(Element element) {
+		final TypeElement lazyElement = registry.getElements().getTypeElement("ollie.Lazy");
+		final TypeMirror type = element.asType();
+		return registry.getTypes().isSameType(registry.getTypes().erasure(type),
+				registry.getTypes().erasure(lazyElement.asType()))
+				&& ((DeclaredType) type).getTypeArguments().isEmpty();
+	}
 }
@@ -16,6 +16,9 @@
 
 package ollie.internal.codegen.validator;
 
+import ollie.annotation.Cache;
+import ollie.annotation.Index;
+import ollie.annotation.Table;
 import ollie.internal.codegen.Registry;
 
 import javax.annotation.processing.Messager;
@@ -38,6 +41,20 @@ public class ModelAdapterValidator implements Validator {
 			return false;
 		}
 
+		Cache cache = element.getAnnotation(Cache.class);
+		if (cache != null && cache.size() < 0) {
+			messager.printMessage(ERROR, "@Cache size must not be negative.", element);
+			return false;
+		}
+
+		Table table = element.getAnnotation(Table.class);
+		for (Index index : table.indices()) {
+			if (index.value().length == 0) {
+				messager.printMessage(ERROR, "@Table indices must declare their columns.", element);
+				return false;
+			}
+		}
+
 		return true;
 	}
 }
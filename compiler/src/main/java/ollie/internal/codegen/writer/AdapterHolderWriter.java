@@ -16,6 +16,7 @@
 
 package ollie.internal.codegen.writer;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.squareup.javawriter.JavaWriter;
@@ -75,7 +76,10 @@ public class AdapterHolderWriter implements SourceWriter<TypeElement> {
 	private void writeImports(JavaWriter writer) throws IOException {
 		Set<String> imports = Sets.newHashSet(
 				ArrayList.class.getName(),
+				Arrays.class.getName(),
+				Collections.class.getName(),
 				HashMap.class.getName(),
+				IdentityHashMap.class.getName(),
 				List.class.getName(),
 				Map.class.getName(),
 				AdapterHolder.class.getName(),
@@ -87,6 +91,11 @@ public class AdapterHolderWriter implements SourceWriter<TypeElement> {
 	}
 
 	private void writeCollections(JavaWriter writer) throws IOException {
+		List<String> modelAdapters = new ArrayList<String>();
+		for (ModelAdapterElement modelAdapter : getModelAdapterElements()) {
+			modelAdapters.add("new " + modelAdapter.getQualifiedName() + "()");
+		}
+
 		writer.emitField(
 				"List<Migration>",
 				"MIGRATIONS",
@@ -94,10 +103,22 @@ public class AdapterHolderWriter implements SourceWriter<TypeElement> {
 				"new ArrayList<Migration>()"
 		);
 		writer.emitField(
-				"Map<Class<? extends Model>, ModelAdapter>",
+				"ModelAdapter[]",
 				"MODEL_ADAPTERS",
 				CONSTANT_MODIFIERS,
-				"new HashMap<Class<? extends Model>, ModelAdapter>()"
+				"new ModelAdapter[]{" + Joiner.on(", ").join(modelAdapters) + "}"
+		);
+		writer.emitField(
+				"List<ModelAdapter>",
+				"MODEL_ADAPTER_LIST",
+				CONSTANT_MODIFIERS,
+				"Collections.unmodifiableList(Arrays.asList(MODEL_ADAPTERS))"
+		);
+		writer.emitField(
+				"Map<Class, ModelAdapter>",
+				"MODEL_ADAPTER_MAP",
+				CONSTANT_MODIFIERS,
+				"new IdentityHashMap<Class, ModelAdapter>()"
 		);
 		writer.emitField(
 				"Map<Class, TypeAdapter>",
@@ -111,6 +132,12 @@ public class AdapterHolderWriter implements SourceWriter<TypeElement> {
 	private void writeStaticInitializations(JavaWriter writer) throws IOException {
 		writer.beginInitializer(true);
 
+		// Classes are looked up by identity, which does not hash their names.
+		writer.beginControlFlow("for (ModelAdapter modelAdapter : MODEL_ADAPTERS)");
+		writer.emitStatement("MODEL_ADAPTER_MAP.put(modelAdapter.getModelType(), modelAdapter)");
+		writer.endControlFlow();
+		writer.emitEmptyLine();
+
 		List<MigrationElement> migrations = Lists.newArrayList(registry.getMigrationElements());
 		if (!migrations.isEmpty()) {
 			Collections.sort(migrations);
@@ -121,17 +148,6 @@ public class AdapterHolderWriter implements SourceWriter<TypeElement> {
 			writer.emitEmptyLine();
 		}
 
-		List<ModelAdapterElement> modelAdapters = Lists.newArrayList(registry.getModelAdapterElements());
-		if (!modelAdapters.isEmpty()) {
-			Collections.sort(modelAdapters);
-			for (ModelAdapterElement modelAdapter : modelAdapters) {
-				writer.emitStatement("MODEL_ADAPTERS.put(%s.class, new %s())",
-						modelAdapter.getModelQualifiedName(),
-						modelAdapter.getQualifiedName());
-			}
-			writer.emitEmptyLine();
-		}
-
 		List<TypeAdapterElement> typeAdapters = Lists.newArrayList(registry.getTypeAdapterElements());
 		if (!typeAdapters.isEmpty()) {
 			Collections.sort(typeAdapters);
@@ -156,21 +172,28 @@ public class AdapterHolderWriter implements SourceWriter<TypeElement> {
 	private void writeGetModelAdapter(JavaWriter writer) throws IOException {
 		writer.beginMethod("<T extends Model> ModelAdapter<T>", "getModelAdapter", METHOD_MODIFIERS,
 				"Class<? extends Model>", "cls");
-		writer.emitStatement("return MODEL_ADAPTERS.get(cls)");
+		writer.emitStatement("return MODEL_ADAPTER_MAP.get(cls)");
 		writer.endMethod();
 		writer.emitEmptyLine();
 	}
 
 	private void writeGetModelAdapters(JavaWriter writer) throws IOException {
 		writer.beginMethod("List<? extends ModelAdapter>", "getModelAdapters", METHOD_MODIFIERS);
-		writer.emitStatement("return new ArrayList(MODEL_ADAPTERS.values())");
+		writer.emitStatement("return MODEL_ADAPTER_LIST");
 		writer.endMethod();
 		writer.emitEmptyLine();
 	}
 
+	private List<ModelAdapterElement> getModelAdapterElements() {
+		List<ModelAdapterElement> modelAdapters = Lists.newArrayList(registry.getModelAdapterElements());
+		Collections.sort(modelAdapters);
+		return modelAdapters;
+	}
+
 	private void writeGetTypeAdpater(JavaWriter writer) throws IOException {
 		writer.beginMethod("<D, S> TypeAdapter<D, S>", "getTypeAdapter", METHOD_MODIFIERS, "Class<D>", "cls");
 		writer.emitStatement("return TYPE_ADAPTERS.get(cls)");
 		writer.endMethod();
+		writer.emitEmptyLine();
 	}
 }
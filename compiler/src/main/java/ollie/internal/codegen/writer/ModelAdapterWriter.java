@@ -21,10 +21,13 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
 import com.squareup.javawriter.JavaWriter;
 import ollie.Model;
+import ollie.annotation.Cache;
+import ollie.annotation.Index;
 import ollie.annotation.Table;
 import ollie.internal.ModelAdapter;
 import ollie.internal.codegen.Registry;
 import ollie.internal.codegen.element.ColumnElement;
+import ollie.internal.codegen.element.TypeAdapterElement;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
@@ -32,8 +35,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.*;
 
-import static javax.lang.model.element.Modifier.FINAL;
-import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.*;
 
 public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 	private static final Map<String, String> CURSOR_METHOD_MAP = new HashMap<String, String>() {
@@ -54,7 +56,31 @@ public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 		}
 	};
 
+	private static final Map<String, String> STATEMENT_METHOD_MAP = new HashMap<String, String>() {
+		{
+			put(byte[].class.getName(), "bindBlob");
+			put(Byte[].class.getName(), "bindBlob");
+			put(double.class.getName(), "bindDouble");
+			put(Double.class.getName(), "bindDouble");
+			put(float.class.getName(), "bindDouble");
+			put(Float.class.getName(), "bindDouble");
+			put(int.class.getName(), "bindLong");
+			put(Integer.class.getName(), "bindLong");
+			put(long.class.getName(), "bindLong");
+			put(Long.class.getName(), "bindLong");
+			put(short.class.getName(), "bindLong");
+			put(Short.class.getName(), "bindLong");
+			put(String.class.getName(), "bindString");
+		}
+	};
+
+	// Changed columns are tracked in a long bitset, so wider models are always written in full.
+	private static final int MAX_TRACKED_COLUMNS = Long.SIZE;
+
 	private static final Set<Modifier> MODIFIERS = EnumSet.of(PUBLIC, FINAL);
+	private static final Set<Modifier> CONSTANT_MODIFIERS = EnumSet.of(PRIVATE, STATIC, FINAL);
+	private static final Set<Modifier> HELPER_MODIFIERS = EnumSet.of(PRIVATE, STATIC);
+	private static final Set<Modifier> SNAPSHOT_MODIFIERS = EnumSet.of(PRIVATE, STATIC, FINAL);
 
 	private Registry registry;
 
@@ -74,6 +100,7 @@ public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 		final String modelQualifiedName = element.getQualifiedName().toString();
 		final String tableName = element.getAnnotation(Table.class).value();
 		final Set<ColumnElement> columns = registry.getColumnElements(element);
+		final boolean tracked = columns.size() <= MAX_TRACKED_COLUMNS;
 
 		JavaWriter javaWriter = new JavaWriter(writer);
 		javaWriter.setCompressingTypes(true);
@@ -86,12 +113,28 @@ public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 
 		javaWriter.beginType(simpleName, "class", MODIFIERS, "ModelAdapter<" + modelSimpleName + ">");
 
+		final Map<String, String> typeAdapterFields = writeTypeAdapterFields(javaWriter, columns);
 		writeGetModelType(javaWriter, modelSimpleName);
 		writeGetTableName(javaWriter, tableName);
 		writeGetSchema(javaWriter, tableName, columns);
-		writeLoad(javaWriter, modelQualifiedName, columns);
-		writeSave(javaWriter, modelQualifiedName, columns);
+		writeGetIndexSchemas(javaWriter, tableName, element.getAnnotation(Table.class).indices(), columns);
+		writeCachePolicy(javaWriter, element.getAnnotation(Cache.class));
+		writeGetReferenceType(javaWriter, columns);
+		writeGetUpsertKey(javaWriter, modelQualifiedName, columns, typeAdapterFields);
+		writeGetInsertSql(javaWriter, tableName, columns);
+		writeGetUpdateSql(javaWriter, tableName, columns);
+		writeGetColumnNames(javaWriter, columns);
+		writeGetColumnIndices(javaWriter, columns);
+		writeLoad(javaWriter, modelQualifiedName, columns, typeAdapterFields, tracked);
+		writeBind(javaWriter, modelQualifiedName, columns, typeAdapterFields, tracked);
+		if (tracked) {
+			writeGetChangedColumns(javaWriter, modelQualifiedName, columns, typeAdapterFields);
+			writeTakeSnapshot(javaWriter, modelQualifiedName, columns, typeAdapterFields);
+		}
 		writeDelete(javaWriter, modelQualifiedName, tableName);
+		if (tracked) {
+			writeSnapshot(javaWriter, columns);
+		}
 
 		javaWriter.endType();
 	}
@@ -101,15 +144,48 @@ public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 
 		Set<String> imports = Sets.newHashSet(
 				modelQualifiedName,
-				"android.content.ContentValues",
 				"android.database.Cursor",
 				"android.database.sqlite.SQLiteDatabase",
+				"android.database.sqlite.SQLiteStatement",
 				ModelAdapter.class.getName()
 		);
 
 		writer.emitImports(imports);
 	}
 
+	// Emits a constant for each type adapter used by the columns and returns the constant names keyed by the
+	// qualified name of the adapter.
+	private Map<String, String> writeTypeAdapterFields(JavaWriter writer, Set<ColumnElement> columns)
+			throws IOException {
+
+		final Map<String, String> fields = new LinkedHashMap<String, String>();
+		for (ColumnElement column : columns) {
+			if (column.isModel() || !column.requiresTypeAdapter()) {
+				continue;
+			}
+
+			final TypeAdapterElement typeAdapter = column.getTypeAdapterElement();
+			final String typeAdapterName = typeAdapter.getQualifiedName();
+			if (fields.containsKey(typeAdapterName)) {
+				continue;
+			}
+
+			String fieldName = createConstantName(typeAdapter.getSimpleName());
+			if (fields.containsValue(fieldName)) {
+				fieldName = fieldName + "_" + fields.size();
+			}
+			fields.put(typeAdapterName, fieldName);
+
+			writer.emitField(typeAdapterName, fieldName, CONSTANT_MODIFIERS, "new " + typeAdapterName + "()");
+		}
+
+		if (!fields.isEmpty()) {
+			writer.emitEmptyLine();
+		}
+
+		return fields;
+	}
+
 	private void writeGetModelType(JavaWriter writer, String modelSimpleName) throws IOException {
 		writer.beginMethod("Class<? extends Model>", "getModelType", MODIFIERS);
 		writer.emitStatement("return " + modelSimpleName + ".class");
@@ -149,90 +225,306 @@ public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 		writer.emitEmptyLine();
 	}
 
-	private void writeLoad(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns) throws
-			IOException {
-
-		writer.beginMethod("void", "load", MODIFIERS, modelQualifiedName, "entity", "Cursor", "cursor");
+	private void writeGetIndexSchemas(JavaWriter writer, String tableName, Index[] tableIndices,
+			Set<ColumnElement> columns) throws IOException {
 
+		List<String> definitions = new ArrayList<String>();
 		for (ColumnElement column : columns) {
-			StringBuilder value = new StringBuilder();
-			value.append("cursor.getColumnIndex(\"").append(column.getColumnName()).append("\")");
-			writer.emitStatement("final int " + column.getColumnName() + "Index = " + value.toString());
+			final Index index = column.getIndex();
+			if (index != null) {
+				definitions.add(createIndexSchema(tableName, index, new String[]{column.getColumnName()}));
+			}
+		}
+		for (Index index : tableIndices) {
+			definitions.add(createIndexSchema(tableName, index, index.value()));
+		}
+		if (definitions.isEmpty()) {
+			return;
 		}
 
+		writer.beginMethod("String[]", "getIndexSchemas", MODIFIERS);
+		writer.emitStatement("return new String[]{%s}", Joiner.on(", ").join(definitions));
+		writer.endMethod();
 		writer.emitEmptyLine();
+	}
 
-		for (ColumnElement column : columns) {
-			final StringBuilder value = new StringBuilder();
-			value.append("entity.")
-					.append(column.getFieldName())
-					.append(" = ")
-					.append(column.getColumnName())
-					.append("Index >= 0 ? ");
+	private String createIndexSchema(String tableName, Index index, String[] columnNames) {
+		final String name = Strings.isNullOrEmpty(index.name())
+				? tableName + "_" + Joiner.on("_").join(columnNames)
+				: index.name();
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("\"CREATE ");
+		if (index.unique()) {
+			builder.append("UNIQUE ");
+		}
+		builder.append("INDEX IF NOT EXISTS ").append(name);
+		builder.append(" ON ").append(tableName).append(" (").append(Joiner.on(", ").join(columnNames)).append(")");
+		if (!Strings.isNullOrEmpty(index.where())) {
+			builder.append(" WHERE ").append(index.where().replace("\\", "\\\\").replace("\"", "\\\""));
+		}
+		builder.append("\"");
+		return builder.toString();
+	}
 
-			int closeParens = 1;
+	private void writeCachePolicy(JavaWriter writer, Cache cache) throws IOException {
+		if (cache == null) {
+			return;
+		}
+
+		writer.beginMethod("ollie.annotation.Cache.Policy", "getCachePolicy", MODIFIERS);
+		writer.emitStatement("return ollie.annotation.Cache.Policy.%s", cache.value().name());
+		writer.endMethod();
+		writer.emitEmptyLine();
+
+		writer.beginMethod("int", "getCacheSize", MODIFIERS);
+		writer.emitStatement("return %d", cache.size());
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeGetReferenceType(JavaWriter writer, Set<ColumnElement> columns) throws IOException {
+		List<ColumnElement> references = new ArrayList<ColumnElement>();
+		for (ColumnElement column : columns) {
 			if (column.isModel()) {
-				closeParens++;
-				value.append("Ollie.getOrFindEntity(")
-						.append(column.getDeserializedQualifiedName())
-						.append(".class, ");
-			} else if (column.requiresTypeAdapter()) {
-				closeParens++;
-				value.append("Ollie.getTypeAdapter(")
-						.append(column.getDeserializedQualifiedName())
-						.append(".class).deserialize(");
+				references.add(column);
 			}
+		}
+		if (references.isEmpty()) {
+			return;
+		}
 
-			value.append("cursor.").append(CURSOR_METHOD_MAP.get(column.getSerializedQualifiedName())).append("(");
-			value.append(column.getColumnName()).append("Index");
+		writer.beginMethod("Class<? extends Model>", "getReferenceType", MODIFIERS, "String", "columnName");
+		for (ColumnElement column : references) {
+			writer.beginControlFlow("if (\"" + column.getColumnName() + "\".equals(columnName))");
+			writer.emitStatement("return %s.class", column.getDeserializedQualifiedName());
+			writer.endControlFlow();
+		}
+		writer.emitStatement("return null");
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	// Upserts match existing rows by the first unique column.
+	private void writeGetUpsertKey(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns,
+			Map<String, String> typeAdapterFields) throws IOException {
 
-			for (int i = 0; i < closeParens; i++) {
-				value.append(")");
+		for (ColumnElement column : columns) {
+			if (column.isUnique() && !Model._ID.equals(column.getColumnName())) {
+				writer.beginMethod("String", "getUpsertKey", MODIFIERS);
+				writer.emitStatement("return \"" + column.getColumnName() + "\"");
+				writer.endMethod();
+				writer.emitEmptyLine();
+
+				writer.beginMethod("boolean", "bindUpsertKey", MODIFIERS, modelQualifiedName, "entity",
+						"SQLiteStatement", "statement", "int", "index");
+				if (column.isPrimitive() && !column.requiresTypeAdapter()) {
+					// A primitive key always has a value.
+					writer.emitStatement("statement.%s(index, entity.%s)",
+							STATEMENT_METHOD_MAP.get(column.getSerializedQualifiedName()), column.getFieldName());
+				} else {
+					writer.emitStatement("final %s value = %s", column.getSerializedQualifiedName(),
+							createSerializedValue(column, typeAdapterFields));
+					writer.beginControlFlow("if (value == null)");
+					writer.emitStatement("return false");
+					writer.endControlFlow();
+					writer.emitStatement("%s(statement, index, value)",
+							STATEMENT_METHOD_MAP.get(column.getSerializedQualifiedName()));
+				}
+				writer.emitStatement("return true");
+				writer.endMethod();
+				writer.emitEmptyLine();
+				return;
 			}
+		}
+	}
+
+	private void writeGetInsertSql(JavaWriter writer, String tableName, Set<ColumnElement> columns)
+			throws IOException {
 
-			value.append(" : null");
+		writer.beginMethod("String", "getInsertSql", MODIFIERS);
 
-			writer.emitStatement(value.toString());
+		List<String> names = new ArrayList<String>();
+		List<String> placeholders = new ArrayList<String>();
+		for (ColumnElement column : columns) {
+			names.add(column.getColumnName());
+			placeholders.add("?");
 		}
 
+		writer.emitStatement("return \"INSERT INTO %s (%s) VALUES (%s)\"",
+				tableName,
+				Joiner.on(", ").join(names),
+				Joiner.on(", ").join(placeholders));
+
 		writer.endMethod();
 		writer.emitEmptyLine();
 	}
 
-	private void writeSave(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns) throws
-			IOException {
+	private void writeGetUpdateSql(JavaWriter writer, String tableName, Set<ColumnElement> columns)
+			throws IOException {
 
-		writer.beginMethod("Long", "save", MODIFIERS, modelQualifiedName, "entity", "SQLiteDatabase", "db");
-		writer.emitStatement("ContentValues values = new ContentValues()");
+		writer.beginMethod("String", "getUpdateSql", MODIFIERS);
 
+		List<String> assignments = new ArrayList<String>();
 		for (ColumnElement column : columns) {
-			final StringBuilder value = new StringBuilder();
-			int closeParens = 0;
+			assignments.add(column.getColumnName() + "=?");
+		}
 
-			if (!column.isModel() && column.requiresTypeAdapter()) {
-				closeParens++;
-				value.append("(").append(column.getSerializedQualifiedName())
-						.append(") Ollie.getTypeAdapter(")
-						.append(column.getDeserializedQualifiedName())
-						.append(".class).serialize(");
+		writer.emitStatement("return \"UPDATE %s SET %s WHERE %s=?\"",
+				tableName,
+				Joiner.on(", ").join(assignments),
+				Model._ID);
+
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeGetColumnNames(JavaWriter writer, Set<ColumnElement> columns) throws IOException {
+		writer.beginMethod("String[]", "getColumnNames", MODIFIERS);
+
+		List<String> names = new ArrayList<String>();
+		for (ColumnElement column : columns) {
+			names.add("\"" + column.getColumnName() + "\"");
+		}
+
+		writer.emitStatement("return new String[]{%s}", Joiner.on(", ").join(names));
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeGetColumnIndices(JavaWriter writer, Set<ColumnElement> columns) throws IOException {
+		writer.beginMethod("int[]", "getColumnIndices", MODIFIERS, "Cursor", "cursor");
+
+		List<String> indices = new ArrayList<String>();
+		for (ColumnElement column : columns) {
+			indices.add("cursor.getColumnIndex(\"" + column.getColumnName() + "\")");
+		}
+
+		writer.emitStatement("return new int[]{%s}", Joiner.on(", ").join(indices));
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeLoad(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns,
+			Map<String, String> typeAdapterFields, boolean tracked) throws IOException {
+
+		writer.beginMethod("void", "load", MODIFIERS, modelQualifiedName, "entity", "Cursor", "cursor", "int[]",
+				"indices");
+		if (tracked) {
+			writer.emitStatement("final Snapshot snapshot = getSnapshot(entity)");
+		}
+
+		int index = 0;
+		for (ColumnElement column : columns) {
+			final String columnIndex = "indices[" + index++ + "]";
+			final String field = "entity." + column.getFieldName();
+			if (!column.isModel() && !column.requiresTypeAdapter()) {
+				writer.emitStatement("%s = %s >= 0 ? cursor.%s(%s) : %s", field, columnIndex,
+						CURSOR_METHOD_MAP.get(column.getSerializedQualifiedName()), columnIndex,
+						column.isPrimitive() ? "0" : "null");
+				if (tracked) {
+					writer.emitStatement("snapshot.%s = %s", column.getFieldName(), field);
+				}
+				continue;
 			}
 
-			value.append("entity.").append(column.getFieldName());
+			// A NULL reference must not resolve to a model or Lazy with id 0.
+			final String present = column.isModel()
+					? columnIndex + " >= 0 && !cursor.isNull(" + columnIndex + ")"
+					: columnIndex + " >= 0";
+
+			// Serialized values are read into the snapshot once and deserialized from there.
+			final String serialized;
+			if (tracked) {
+				serialized = "snapshot." + column.getFieldName();
+				writer.emitStatement("%s = %s ? cursor.%s(%s) : null", serialized, present,
+						CURSOR_METHOD_MAP.get(column.getSerializedQualifiedName()), columnIndex);
+			} else {
+				serialized = "cursor." + CURSOR_METHOD_MAP.get(column.getSerializedQualifiedName())
+						+ "(" + columnIndex + ")";
+			}
 
-			if (column.isModel()) {
-				value.append(" != null ? ");
-				value.append("entity.").append(column.getFieldName()).append(".id");
-				value.append(" : null");
+			final StringBuilder value = new StringBuilder();
+			if (column.isLazy()) {
+				value.append("new Lazy<")
+						.append(column.getDeserializedQualifiedName())
+						.append(">(")
+						.append(column.getDeserializedQualifiedName())
+						.append(".class, ");
+			} else if (column.isModel()) {
+				value.append("Ollie.getOrFindEntity(")
+						.append(column.getDeserializedQualifiedName())
+						.append(".class, ");
+			} else {
+				value.append(typeAdapterFields.get(column.getTypeAdapterElement().getQualifiedName()))
+						.append(".deserialize(");
 			}
+			value.append(serialized).append(")");
+
+			writer.emitStatement("%s = %s ? %s : null", field,
+					tracked ? serialized + " != null" : present, value.toString());
+		}
 
-			for (int i = 0; i < closeParens; i++) {
-				value.append(")");
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeBind(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns,
+			Map<String, String> typeAdapterFields, boolean tracked) throws IOException {
+
+		writer.beginMethod("int", "bind", MODIFIERS, modelQualifiedName, "entity", "SQLiteStatement", "statement",
+				"long", "columns", "int", "index");
+
+		int position = 0;
+		for (ColumnElement column : columns) {
+			if (tracked) {
+				writer.beginControlFlow("if (isChanged(columns, " + position++ + "))");
 			}
+			writer.emitStatement("%s(statement, ++index, %s)",
+					STATEMENT_METHOD_MAP.get(column.getSerializedQualifiedName()),
+					createSerializedValue(column, typeAdapterFields));
+			if (tracked) {
+				writer.endControlFlow();
+			}
+		}
 
-			writer.emitStatement("values.put(\"" + column.getColumnName() + "\", " + value.toString() + ")");
+		writer.emitStatement("return index");
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeGetChangedColumns(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns,
+			Map<String, String> typeAdapterFields) throws IOException {
+
+		writer.beginMethod("long", "getChangedColumns", MODIFIERS, modelQualifiedName, "entity");
+		writer.emitStatement("final Snapshot snapshot = (Snapshot) ((Model) entity).mSnapshot");
+		writer.beginControlFlow("if (entity.id == null || snapshot == null)");
+		writer.emitStatement("return ALL_COLUMNS");
+		writer.endControlFlow();
+		writer.emitStatement("long changedColumns = 0");
+
+		int position = 0;
+		for (ColumnElement column : columns) {
+			writer.beginControlFlow("if (!equal(" + createSerializedValue(column, typeAdapterFields)
+					+ ", snapshot." + column.getFieldName() + "))");
+			writer.emitStatement("changedColumns |= 1L << %d", position++);
+			writer.endControlFlow();
 		}
 
-		writer.emitStatement("return insertOrUpdate(entity, db, values)");
+		writer.emitStatement("return changedColumns");
+		writer.endMethod();
+		writer.emitEmptyLine();
+	}
+
+	private void writeTakeSnapshot(JavaWriter writer, String modelQualifiedName, Set<ColumnElement> columns,
+			Map<String, String> typeAdapterFields) throws IOException {
+
+		writer.beginMethod("void", "takeSnapshot", MODIFIERS, modelQualifiedName, "entity");
+		writer.emitStatement("final Snapshot snapshot = getSnapshot(entity)");
+		for (ColumnElement column : columns) {
+			writer.emitStatement("snapshot.%s = %s", column.getFieldName(),
+					createSerializedValue(column, typeAdapterFields));
+		}
 		writer.endMethod();
 		writer.emitEmptyLine();
 	}
@@ -245,6 +537,38 @@ public class ModelAdapterWriter implements SourceWriter<TypeElement> {
 		writer.emitEmptyLine();
 	}
 
+	// The serialized column values as of the last load or save, held by the entity.
+	private void writeSnapshot(JavaWriter writer, Set<ColumnElement> columns) throws IOException {
+		writer.beginMethod("Snapshot", "getSnapshot", HELPER_MODIFIERS, "Model", "entity");
+		writer.beginControlFlow("if (entity.mSnapshot == null)");
+		writer.emitStatement("entity.mSnapshot = new Snapshot()");
+		writer.endControlFlow();
+		writer.emitStatement("return (Snapshot) entity.mSnapshot");
+		writer.endMethod();
+		writer.emitEmptyLine();
+
+		writer.beginType("Snapshot", "class", SNAPSHOT_MODIFIERS);
+		for (ColumnElement column : columns) {
+			writer.emitField(column.getSerializedQualifiedName(), column.getFieldName());
+		}
+		writer.endType();
+	}
+
+	private String createSerializedValue(ColumnElement column, Map<String, String> typeAdapterFields) {
+		final String field = "entity." + column.getFieldName();
+		if (column.isModel()) {
+			return field + " != null ? " + field + (column.isLazy() ? ".getId()" : ".id") + " : null";
+		} else if (column.requiresTypeAdapter()) {
+			return typeAdapterFields.get(column.getTypeAdapterElement().getQualifiedName()) + ".serialize(" + field
+					+ ")";
+		}
+		return field;
+	}
+
+	private static String createConstantName(String simpleName) {
+		return simpleName.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+	}
+
 	private String createSimpleName(TypeElement element) {
 		return element.getSimpleName().toString() + "$$ModelAdapter";
 	}
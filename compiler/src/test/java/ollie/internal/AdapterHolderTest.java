@@ -4,8 +4,10 @@ import com.google.testing.compile.JavaFileObjects;
 import org.junit.Test;
 
 import javax.tools.JavaFileObject;
+import java.util.Arrays;
 
 import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
+import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 import static ollie.internal.ProcessorTestUtilities.ollieProcessors;
 import static org.truth0.Truth.ASSERT;
 
@@ -36,7 +38,10 @@ public class AdapterHolderTest {
 				"package ollie;",
 
 				"import java.util.ArrayList;",
+				"import java.util.Arrays;",
+				"import java.util.Collections;",
 				"import java.util.HashMap;",
+				"import java.util.IdentityHashMap;",
 				"import java.util.List;",
 				"import java.util.Map;",
 				"import ollie.internal.AdapterHolder;",
@@ -44,11 +49,17 @@ public class AdapterHolderTest {
 
 				"public final class AdapterHolderImpl implements AdapterHolder {",
 				"	private static final List<Migration> MIGRATIONS = new ArrayList<Migration>();",
-				"	private static final Map<Class<? extends Model>, ModelAdapter> MODEL_ADAPTERS = " +
-						"new HashMap<Class<? extends Model>, ModelAdapter>();",
+				"	private static final ModelAdapter[] MODEL_ADAPTERS = new ModelAdapter[]{};",
+				"	private static final List<ModelAdapter> MODEL_ADAPTER_LIST = " +
+						"Collections.unmodifiableList(Arrays.asList(MODEL_ADAPTERS));",
+				"	private static final Map<Class, ModelAdapter> MODEL_ADAPTER_MAP = " +
+						"new IdentityHashMap<Class, ModelAdapter>();",
 				"	private static final Map<Class, TypeAdapter> TYPE_ADAPTERS = new HashMap<Class, TypeAdapter>();",
 
 				"	static {",
+				"		for (ModelAdapter modelAdapter : MODEL_ADAPTERS) {",
+				"			MODEL_ADAPTER_MAP.put(modelAdapter.getModelType(), modelAdapter);",
+				"		}",
 				"		MIGRATIONS.add(new ollie.test.AddDateColumnMigration());",
 
 				"		TYPE_ADAPTERS.put(java.lang.Boolean.class, new ollie.adapter.BooleanAdapter());",
@@ -62,11 +73,11 @@ public class AdapterHolderTest {
 				"	}",
 
 				"	public final <T extends Model> ModelAdapter<T> getModelAdapter(Class<? extends Model> cls) {",
-				"		return MODEL_ADAPTERS.get(cls);",
+				"		return MODEL_ADAPTER_MAP.get(cls);",
 				"	}",
 
 				"	public final List<? extends ModelAdapter> getModelAdapters() {",
-				"		return new ArrayList(MODEL_ADAPTERS.values());",
+				"		return MODEL_ADAPTER_LIST;",
 				"	}",
 
 				"	public final <D, S> TypeAdapter<D, S> getTypeAdapter(Class<D> cls) {",
@@ -81,4 +92,101 @@ public class AdapterHolderTest {
 				.and()
 				.generatesSources(adapterHolderImpl);
 	}
+
+	@Test
+	public void modelAdapters() {
+		// "Aa" and "BB" have the same hash code, which must not matter to the lookup by class.
+		JavaFileObject aa = JavaFileObjects.forSourceLines("ollie.test.Aa",
+				"package ollie.test;",
+
+				"import ollie.Model;",
+				"import ollie.annotation.Table;",
+
+				"@Table(\"aa\")",
+				"public class Aa extends Model {",
+				"}"
+		);
+
+		JavaFileObject bb = JavaFileObjects.forSourceLines("ollie.test.BB",
+				"package ollie.test;",
+
+				"import ollie.Model;",
+				"import ollie.annotation.Table;",
+
+				"@Table(\"bb\")",
+				"public class BB extends Model {",
+				"}"
+		);
+
+		JavaFileObject note = JavaFileObjects.forSourceLines("ollie.test.Note",
+				"package ollie.test;",
+
+				"import ollie.Model;",
+				"import ollie.annotation.Column;",
+				"import ollie.annotation.Table;",
+
+				"@Table(\"notes\")",
+				"public class Note extends Model {",
+				"	@Column(\"title\") public String title;",
+				"}"
+		);
+
+		JavaFileObject adapterHolderImpl = JavaFileObjects.forSourceLines("ollie/AdapterHolderImpl",
+				"package ollie;",
+
+				"import java.util.ArrayList;",
+				"import java.util.Arrays;",
+				"import java.util.Collections;",
+				"import java.util.HashMap;",
+				"import java.util.IdentityHashMap;",
+				"import java.util.List;",
+				"import java.util.Map;",
+				"import ollie.internal.AdapterHolder;",
+				"import ollie.internal.ModelAdapter;",
+
+				"public final class AdapterHolderImpl implements AdapterHolder {",
+				"	private static final List<Migration> MIGRATIONS = new ArrayList<Migration>();",
+				"	private static final ModelAdapter[] MODEL_ADAPTERS = new ModelAdapter[]{" +
+						"new ollie.Aa$$ModelAdapter(), new ollie.BB$$ModelAdapter(), new ollie.Note$$ModelAdapter()};",
+				"	private static final List<ModelAdapter> MODEL_ADAPTER_LIST = " +
+						"Collections.unmodifiableList(Arrays.asList(MODEL_ADAPTERS));",
+				"	private static final Map<Class, ModelAdapter> MODEL_ADAPTER_MAP = " +
+						"new IdentityHashMap<Class, ModelAdapter>();",
+				"	private static final Map<Class, TypeAdapter> TYPE_ADAPTERS = new HashMap<Class, TypeAdapter>();",
+
+				"	static {",
+				"		for (ModelAdapter modelAdapter : MODEL_ADAPTERS) {",
+				"			MODEL_ADAPTER_MAP.put(modelAdapter.getModelType(), modelAdapter);",
+				"		}",
+				"		TYPE_ADAPTERS.put(java.lang.Boolean.class, new ollie.adapter.BooleanAdapter());",
+				"		TYPE_ADAPTERS.put(java.util.Calendar.class, new ollie.adapter.CalendarAdapter());",
+				"		TYPE_ADAPTERS.put(java.sql.Date.class, new ollie.adapter.SqlDateAdapter());",
+				"		TYPE_ADAPTERS.put(java.util.Date.class, new ollie.adapter.UtilDateAdapter());",
+				"	}",
+
+				"	public final List<? extends Migration> getMigrations() {",
+				"		return MIGRATIONS;",
+				"	}",
+
+				"	public final <T extends Model> ModelAdapter<T> getModelAdapter(Class<? extends Model> cls) {",
+				"		return MODEL_ADAPTER_MAP.get(cls);",
+				"	}",
+
+				"	public final List<? extends ModelAdapter> getModelAdapters() {",
+				"		return MODEL_ADAPTER_LIST;",
+				"	}",
+
+				"	public final <D, S> TypeAdapter<D, S> getTypeAdapter(Class<D> cls) {",
+				"		return TYPE_ADAPTERS.get(cls);",
+				"	}",
+
+				"}"
+		);
+
+		ASSERT.about(javaSources()).that(Arrays.asList(aa, bb, note))
+				.processedWith(ollieProcessors())
+				.compilesWithoutError()
+				.and()
+				.generatesSources(adapterHolderImpl);
+	}
 }
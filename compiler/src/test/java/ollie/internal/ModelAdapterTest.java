@@ -21,8 +21,10 @@ import ollie.internal.codegen.Errors;
 import org.junit.Test;
 
 import javax.tools.JavaFileObject;
+import java.util.Arrays;
 
 import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
+import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 import static ollie.internal.ProcessorTestUtilities.ollieProcessors;
 import static org.truth0.Truth.ASSERT;
 
@@ -52,13 +54,16 @@ public class ModelAdapterTest {
 		JavaFileObject expectedSource = JavaFileObjects.forSourceLines("ollie/Note$$ModelAdapter",
 				"package ollie;",
 
-				"import android.content.ContentValues;",
 				"import android.database.Cursor;",
 				"import android.database.sqlite.SQLiteDatabase;",
+				"import android.database.sqlite.SQLiteStatement;",
 				"import ollie.internal.ModelAdapter;",
 				"import ollie.test.Note;",
 
 				"public final class Note$$ModelAdapter extends ModelAdapter<Note> {",
+				"	private static final ollie.adapter.UtilDateAdapter UTIL_DATE_ADAPTER = " +
+						"new ollie.adapter.UtilDateAdapter();",
+
 				"	public final Class<? extends Model> getModelType() {",
 				"		return Note.class;",
 				"	}",
@@ -75,31 +80,378 @@ public class ModelAdapterTest {
 				"			\"date INTEGER)\";",
 				"	}",
 
-				"	public final void load(Note entity, Cursor cursor) {",
-				"		final int _idIndex = cursor.getColumnIndex(\"_id\");",
-				"		final int titleIndex = cursor.getColumnIndex(\"title\")",
-				"		final int bodyIndex = cursor.getColumnIndex(\"body\")",
-				"		final int dateIndex = cursor.getColumnIndex(\"date\")",
-				"		entity.id = _idIndex >= 0 ? cursor.getLong(_idIndex) : null;",
-				"		entity.title = titleIndex >= 0 ? cursor.getString(titleIndex) : null;",
-				"		entity.body = bodyIndex >= 0 ? cursor.getString(bodyIndex) : null;",
-				"		entity.date = dateIndex >= 0 ? Ollie.getTypeAdapter(java.util.Date.class)",
-				"				.deserialize(cursor.getLong(dateIndex)) : null;",
+				"	public final String getInsertSql() {",
+				"		return \"INSERT INTO notes (_id, title, body, date) VALUES (?, ?, ?, ?)\";",
+				"	}",
+
+				"	public final String getUpdateSql() {",
+				"		return \"UPDATE notes SET _id=?, title=?, body=?, date=? WHERE _id=?\";",
+				"	}",
+
+				"	public final String[] getColumnNames() {",
+				"		return new String[]{\"_id\", \"title\", \"body\", \"date\"};",
+				"	}",
+
+				"	public final int[] getColumnIndices(Cursor cursor) {",
+				"		return new int[]{cursor.getColumnIndex(\"_id\"), cursor.getColumnIndex(\"title\"), " +
+						"cursor.getColumnIndex(\"body\"), cursor.getColumnIndex(\"date\")};",
 				"	}",
 
-				"	public final Long save(Note entity, SQLiteDatabase db) {",
-				"		ContentValues values = new ContentValues();",
-				"		values.put(\"_id\", entity.id);",
-				"		values.put(\"title\", entity.title);",
-				"		values.put(\"body\", entity.body);",
-				"		values.put(\"date\", (java.lang.Long) Ollie.getTypeAdapter(java.util.Date.class)",
-				"				.serialize(entity.date));",
-				"		return insertOrUpdate(entity, db, values);",
+				"	public final void load(Note entity, Cursor cursor, int[] indices) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		entity.id = indices[0] >= 0 ? cursor.getLong(indices[0]) : null;",
+				"		snapshot.id = entity.id;",
+				"		entity.title = indices[1] >= 0 ? cursor.getString(indices[1]) : null;",
+				"		snapshot.title = entity.title;",
+				"		entity.body = indices[2] >= 0 ? cursor.getString(indices[2]) : null;",
+				"		snapshot.body = entity.body;",
+				"		snapshot.date = indices[3] >= 0 ? cursor.getLong(indices[3]) : null;",
+				"		entity.date = snapshot.date != null ? UTIL_DATE_ADAPTER.deserialize(snapshot.date) : null;",
+				"	}",
+
+				"	public final int bind(Note entity, SQLiteStatement statement, long columns, int index) {",
+				"		if (isChanged(columns, 0)) {",
+				"			bindLong(statement, ++index, entity.id);",
+				"		}",
+				"		if (isChanged(columns, 1)) {",
+				"			bindString(statement, ++index, entity.title);",
+				"		}",
+				"		if (isChanged(columns, 2)) {",
+				"			bindString(statement, ++index, entity.body);",
+				"		}",
+				"		if (isChanged(columns, 3)) {",
+				"			bindLong(statement, ++index, UTIL_DATE_ADAPTER.serialize(entity.date));",
+				"		}",
+				"		return index;",
+				"	}",
+
+				"	public final long getChangedColumns(Note entity) {",
+				"		final Snapshot snapshot = (Snapshot) ((Model) entity).mSnapshot;",
+				"		if (entity.id == null || snapshot == null) {",
+				"			return ALL_COLUMNS;",
+				"		}",
+				"		long changedColumns = 0;",
+				"		if (!equal(entity.id, snapshot.id)) {",
+				"			changedColumns |= 1L << 0;",
+				"		}",
+				"		if (!equal(entity.title, snapshot.title)) {",
+				"			changedColumns |= 1L << 1;",
+				"		}",
+				"		if (!equal(entity.body, snapshot.body)) {",
+				"			changedColumns |= 1L << 2;",
+				"		}",
+				"		if (!equal(UTIL_DATE_ADAPTER.serialize(entity.date), snapshot.date)) {",
+				"			changedColumns |= 1L << 3;",
+				"		}",
+				"		return changedColumns;",
+				"	}",
+
+				"	public final void takeSnapshot(Note entity) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		snapshot.id = entity.id;",
+				"		snapshot.title = entity.title;",
+				"		snapshot.body = entity.body;",
+				"		snapshot.date = UTIL_DATE_ADAPTER.serialize(entity.date);",
 				"	}",
 
 				"	public final void delete(Note entity, SQLiteDatabase db) {",
 				"		db.delete(\"notes\", \"_id=?\", new String[]{entity.id.toString()});",
 				"	}",
+
+				"	private static Snapshot getSnapshot(Model entity) {",
+				"		if (entity.mSnapshot == null) {",
+				"			entity.mSnapshot = new Snapshot();",
+				"		}",
+				"		return (Snapshot) entity.mSnapshot;",
+				"	}",
+
+				"	private static final class Snapshot {",
+				"		Long id;",
+				"		String title;",
+				"		String body;",
+				"		Long date;",
+				"	}",
+				"}"
+		);
+
+		ASSERT.about(javaSource()).that(source)
+				.processedWith(ollieProcessors())
+				.compilesWithoutError()
+				.and()
+				.generatesSources(expectedSource);
+	}
+
+	@Test
+	public void indices() {
+		JavaFileObject source = JavaFileObjects.forSourceLines("ollie.test.Note",
+				"package ollie.test;",
+
+				"import ollie.Model;",
+				"import ollie.annotation.Column;",
+				"import ollie.annotation.Index;",
+				"import ollie.annotation.Table;",
+
+				"@Table(value = \"notes\", indices = @Index(value = {\"title\", \"date\"}, name = \"recent_notes\", " +
+						"where = \"date IS NOT NULL\"))",
+				"public class Note extends Model {",
+				"	@Column(\"title\") @Index public String title;",
+				"	@Column(\"date\") public Long date;",
+				"}"
+		);
+
+		JavaFileObject expectedSource = JavaFileObjects.forSourceLines("ollie/Note$$ModelAdapter",
+				"package ollie;",
+
+				"import android.database.Cursor;",
+				"import android.database.sqlite.SQLiteDatabase;",
+				"import android.database.sqlite.SQLiteStatement;",
+				"import ollie.internal.ModelAdapter;",
+				"import ollie.test.Note;",
+
+				"public final class Note$$ModelAdapter extends ModelAdapter<Note> {",
+				"	public final Class<? extends Model> getModelType() {",
+				"		return Note.class;",
+				"	}",
+
+				"	public final String getTableName() {",
+				"		return \"notes\";",
+				"	}",
+
+				"	public final String getSchema() {",
+				"		return \"CREATE TABLE IF NOT EXISTS notes (\" +",
+				"			\"_id INTEGER PRIMARY KEY AUTOINCREMENT, \" +",
+				"			\"title TEXT, \" +",
+				"			\"date INTEGER)\";",
+				"	}",
+
+				"	public final String[] getIndexSchemas() {",
+				"		return new String[]{\"CREATE INDEX IF NOT EXISTS notes_title ON notes (title)\", " +
+						"\"CREATE INDEX IF NOT EXISTS recent_notes ON notes (title, date) WHERE date IS NOT NULL\"};",
+				"	}",
+
+				"	public final String getInsertSql() {",
+				"		return \"INSERT INTO notes (_id, title, date) VALUES (?, ?, ?)\";",
+				"	}",
+
+				"	public final String getUpdateSql() {",
+				"		return \"UPDATE notes SET _id=?, title=?, date=? WHERE _id=?\";",
+				"	}",
+
+				"	public final String[] getColumnNames() {",
+				"		return new String[]{\"_id\", \"title\", \"date\"};",
+				"	}",
+
+				"	public final int[] getColumnIndices(Cursor cursor) {",
+				"		return new int[]{cursor.getColumnIndex(\"_id\"), cursor.getColumnIndex(\"title\"), " +
+						"cursor.getColumnIndex(\"date\")};",
+				"	}",
+
+				"	public final void load(Note entity, Cursor cursor, int[] indices) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		entity.id = indices[0] >= 0 ? cursor.getLong(indices[0]) : null;",
+				"		snapshot.id = entity.id;",
+				"		entity.title = indices[1] >= 0 ? cursor.getString(indices[1]) : null;",
+				"		snapshot.title = entity.title;",
+				"		entity.date = indices[2] >= 0 ? cursor.getLong(indices[2]) : null;",
+				"		snapshot.date = entity.date;",
+				"	}",
+
+				"	public final int bind(Note entity, SQLiteStatement statement, long columns, int index) {",
+				"		if (isChanged(columns, 0)) {",
+				"			bindLong(statement, ++index, entity.id);",
+				"		}",
+				"		if (isChanged(columns, 1)) {",
+				"			bindString(statement, ++index, entity.title);",
+				"		}",
+				"		if (isChanged(columns, 2)) {",
+				"			bindLong(statement, ++index, entity.date);",
+				"		}",
+				"		return index;",
+				"	}",
+
+				"	public final long getChangedColumns(Note entity) {",
+				"		final Snapshot snapshot = (Snapshot) ((Model) entity).mSnapshot;",
+				"		if (entity.id == null || snapshot == null) {",
+				"			return ALL_COLUMNS;",
+				"		}",
+				"		long changedColumns = 0;",
+				"		if (!equal(entity.id, snapshot.id)) {",
+				"			changedColumns |= 1L << 0;",
+				"		}",
+				"		if (!equal(entity.title, snapshot.title)) {",
+				"			changedColumns |= 1L << 1;",
+				"		}",
+				"		if (!equal(entity.date, snapshot.date)) {",
+				"			changedColumns |= 1L << 2;",
+				"		}",
+				"		return changedColumns;",
+				"	}",
+
+				"	public final void takeSnapshot(Note entity) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		snapshot.id = entity.id;",
+				"		snapshot.title = entity.title;",
+				"		snapshot.date = entity.date;",
+				"	}",
+
+				"	public final void delete(Note entity, SQLiteDatabase db) {",
+				"		db.delete(\"notes\", \"_id=?\", new String[]{entity.id.toString()});",
+				"	}",
+
+				"	private static Snapshot getSnapshot(Model entity) {",
+				"		if (entity.mSnapshot == null) {",
+				"			entity.mSnapshot = new Snapshot();",
+				"		}",
+				"		return (Snapshot) entity.mSnapshot;",
+				"	}",
+
+				"	private static final class Snapshot {",
+				"		Long id;",
+				"		String title;",
+				"		Long date;",
+				"	}",
+				"}"
+		);
+
+		ASSERT.about(javaSource()).that(source)
+				.processedWith(ollieProcessors())
+				.compilesWithoutError()
+				.and()
+				.generatesSources(expectedSource);
+	}
+
+	@Test
+	public void primitiveUpsertKey() {
+		JavaFileObject source = JavaFileObjects.forSourceLines("ollie.test.Remote",
+				"package ollie.test;",
+
+				"import ollie.Model;",
+				"import ollie.annotation.Column;",
+				"import ollie.annotation.Table;",
+				"import ollie.annotation.Unique;",
+
+				"@Table(\"remotes\")",
+				"public class Remote extends Model {",
+				"	@Unique @Column(\"remote_id\") public long remoteId;",
+				"	@Column(\"name\") public String name;",
+				"}"
+		);
+
+		JavaFileObject expectedSource = JavaFileObjects.forSourceLines("ollie/Remote$$ModelAdapter",
+				"package ollie;",
+
+				"import android.database.Cursor;",
+				"import android.database.sqlite.SQLiteDatabase;",
+				"import android.database.sqlite.SQLiteStatement;",
+				"import ollie.internal.ModelAdapter;",
+				"import ollie.test.Remote;",
+
+				"public final class Remote$$ModelAdapter extends ModelAdapter<Remote> {",
+				"	public final Class<? extends Model> getModelType() {",
+				"		return Remote.class;",
+				"	}",
+
+				"	public final String getTableName() {",
+				"		return \"remotes\";",
+				"	}",
+
+				"	public final String getSchema() {",
+				"		return \"CREATE TABLE IF NOT EXISTS remotes (\" +",
+				"			\"_id INTEGER PRIMARY KEY AUTOINCREMENT, \" +",
+				"			\"remote_id INTEGER UNIQUE, \" +",
+				"			\"name TEXT)\";",
+				"	}",
+
+				"	public final String getUpsertKey() {",
+				"		return \"remote_id\";",
+				"	}",
+
+				"	public final boolean bindUpsertKey(Remote entity, SQLiteStatement statement, int index) {",
+				"		statement.bindLong(index, entity.remoteId);",
+				"		return true;",
+				"	}",
+
+				"	public final String getInsertSql() {",
+				"		return \"INSERT INTO remotes (_id, remote_id, name) VALUES (?, ?, ?)\";",
+				"	}",
+
+				"	public final String getUpdateSql() {",
+				"		return \"UPDATE remotes SET _id=?, remote_id=?, name=? WHERE _id=?\";",
+				"	}",
+
+				"	public final String[] getColumnNames() {",
+				"		return new String[]{\"_id\", \"remote_id\", \"name\"};",
+				"	}",
+
+				"	public final int[] getColumnIndices(Cursor cursor) {",
+				"		return new int[]{cursor.getColumnIndex(\"_id\"), cursor.getColumnIndex(\"remote_id\"), " +
+						"cursor.getColumnIndex(\"name\")};",
+				"	}",
+
+				"	public final void load(Remote entity, Cursor cursor, int[] indices) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		entity.id = indices[0] >= 0 ? cursor.getLong(indices[0]) : null;",
+				"		snapshot.id = entity.id;",
+				"		entity.remoteId = indices[1] >= 0 ? cursor.getLong(indices[1]) : 0;",
+				"		snapshot.remoteId = entity.remoteId;",
+				"		entity.name = indices[2] >= 0 ? cursor.getString(indices[2]) : null;",
+				"		snapshot.name = entity.name;",
+				"	}",
+
+				"	public final int bind(Remote entity, SQLiteStatement statement, long columns, int index) {",
+				"		if (isChanged(columns, 0)) {",
+				"			bindLong(statement, ++index, entity.id);",
+				"		}",
+				"		if (isChanged(columns, 1)) {",
+				"			bindLong(statement, ++index, entity.remoteId);",
+				"		}",
+				"		if (isChanged(columns, 2)) {",
+				"			bindString(statement, ++index, entity.name);",
+				"		}",
+				"		return index;",
+				"	}",
+
+				"	public final long getChangedColumns(Remote entity) {",
+				"		final Snapshot snapshot = (Snapshot) ((Model) entity).mSnapshot;",
+				"		if (entity.id == null || snapshot == null) {",
+				"			return ALL_COLUMNS;",
+				"		}",
+				"		long changedColumns = 0;",
+				"		if (!equal(entity.id, snapshot.id)) {",
+				"			changedColumns |= 1L << 0;",
+				"		}",
+				"		if (!equal(entity.remoteId, snapshot.remoteId)) {",
+				"			changedColumns |= 1L << 1;",
+				"		}",
+				"		if (!equal(entity.name, snapshot.name)) {",
+				"			changedColumns |= 1L << 2;",
+				"		}",
+				"		return changedColumns;",
+				"	}",
+
+				"	public final void takeSnapshot(Remote entity) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		snapshot.id = entity.id;",
+				"		snapshot.remoteId = entity.remoteId;",
+				"		snapshot.name = entity.name;",
+				"	}",
+
+				"	public final void delete(Remote entity, SQLiteDatabase db) {",
+				"		db.delete(\"remotes\", \"_id=?\", new String[]{entity.id.toString()});",
+				"	}",
+
+				"	private static Snapshot getSnapshot(Model entity) {",
+				"		if (entity.mSnapshot == null) {",
+				"			entity.mSnapshot = new Snapshot();",
+				"		}",
+				"		return (Snapshot) entity.mSnapshot;",
+				"	}",
+
+				"	private static final class Snapshot {",
+				"		Long id;",
+				"		Long remoteId;",
+				"		String name;",
+				"	}",
 				"}"
 		);
 
@@ -110,6 +462,148 @@ public class ModelAdapterTest {
 				.generatesSources(expectedSource);
 	}
 
+	@Test
+	public void lazyReferences() {
+		JavaFileObject tagSource = JavaFileObjects.forSourceLines("ollie.test.Tag",
+				"package ollie.test;",
+
+				"import ollie.Model;",
+				"import ollie.annotation.Column;",
+				"import ollie.annotation.Table;",
+
+				"@Table(\"tags\")",
+				"public class Tag extends Model {",
+				"	@Column(\"name\") public String name;",
+				"}"
+		);
+
+		JavaFileObject noteSource = JavaFileObjects.forSourceLines("ollie.test.Note",
+				"package ollie.test;",
+
+				"import ollie.Lazy;",
+				"import ollie.Model;",
+				"import ollie.annotation.Column;",
+				"import ollie.annotation.Table;",
+
+				"@Table(\"notes\")",
+				"public class Note extends Model {",
+				"	@Column(\"tag\") public Lazy<Tag> tag;",
+				"}"
+		);
+
+		JavaFileObject expectedSource = JavaFileObjects.forSourceLines("ollie/Note$$ModelAdapter",
+				"package ollie;",
+
+				"import android.database.Cursor;",
+				"import android.database.sqlite.SQLiteDatabase;",
+				"import android.database.sqlite.SQLiteStatement;",
+				"import ollie.internal.ModelAdapter;",
+				"import ollie.test.Note;",
+
+				"public final class Note$$ModelAdapter extends ModelAdapter<Note> {",
+				"	public final Class<? extends Model> getModelType() {",
+				"		return Note.class;",
+				"	}",
+
+				"	public final String getTableName() {",
+				"		return \"notes\";",
+				"	}",
+
+				"	public final String getSchema() {",
+				"		return \"CREATE TABLE IF NOT EXISTS notes (\" +",
+				"			\"_id INTEGER PRIMARY KEY AUTOINCREMENT, \" +",
+				"			\"tag INTEGER)\";",
+				"	}",
+
+				"	public final Class<? extends Model> getReferenceType(String columnName) {",
+				"		if (\"tag\".equals(columnName)) {",
+				"			return ollie.test.Tag.class;",
+				"		}",
+				"		return null;",
+				"	}",
+
+				"	public final String getInsertSql() {",
+				"		return \"INSERT INTO notes (_id, tag) VALUES (?, ?)\";",
+				"	}",
+
+				"	public final String getUpdateSql() {",
+				"		return \"UPDATE notes SET _id=?, tag=? WHERE _id=?\";",
+				"	}",
+
+				"	public final String[] getColumnNames() {",
+				"		return new String[]{\"_id\", \"tag\"};",
+				"	}",
+
+				"	public final int[] getColumnIndices(Cursor cursor) {",
+				"		return new int[]{cursor.getColumnIndex(\"_id\"), cursor.getColumnIndex(\"tag\")};",
+				"	}",
+
+				"	public final void load(Note entity, Cursor cursor, int[] indices) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		entity.id = indices[0] >= 0 ? cursor.getLong(indices[0]) : null;",
+				"		snapshot.id = entity.id;",
+				"		snapshot.tag = indices[1] >= 0 && !cursor.isNull(indices[1]) ? " +
+						"cursor.getLong(indices[1]) : null;",
+				"		entity.tag = snapshot.tag != null ? " +
+						"new Lazy<ollie.test.Tag>(ollie.test.Tag.class, snapshot.tag) : null;",
+				"	}",
+
+				"	public final int bind(Note entity, SQLiteStatement statement, long columns, int index) {",
+				"		if (isChanged(columns, 0)) {",
+				"			bindLong(statement, ++index, entity.id);",
+				"		}",
+				"		if (isChanged(columns, 1)) {",
+				"			bindLong(statement, ++index, entity.tag != null ? entity.tag.getId() : null);",
+				"		}",
+				"		return index;",
+				"	}",
+
+				"	public final long getChangedColumns(Note entity) {",
+				"		final Snapshot snapshot = (Snapshot) ((Model) entity).mSnapshot;",
+				"		if (entity.id == null || snapshot == null) {",
+				"			return ALL_COLUMNS;",
+				"		}",
+				"		long changedColumns = 0;",
+				"		if (!equal(entity.id, snapshot.id)) {",
+				"			changedColumns |= 1L << 0;",
+				"		}",
+				"		if (!equal(entity.tag != null ? entity.tag.getId() : null, snapshot.tag)) {",
+				"			changedColumns |= 1L << 1;",
+				"		}",
+				"		return changedColumns;",
+				"	}",
+
+				"	public final void takeSnapshot(Note entity) {",
+				"		final Snapshot snapshot = getSnapshot(entity);",
+				"		snapshot.id = entity.id;",
+				"		snapshot.tag = entity.tag != null ? entity.tag.getId() : null;",
+				"	}",
+
+				"	public final void delete(Note entity, SQLiteDatabase db) {",
+				"		db.delete(\"notes\", \"_id=?\", new String[]{entity.id.toString()});",
+				"	}",
+
+				"	private static Snapshot getSnapshot(Model entity) {",
+				"		if (entity.mSnapshot == null) {",
+				"			entity.mSnapshot = new Snapshot();",
+				"		}",
+				"		return (Snapshot) entity.mSnapshot;",
+				"	}",
+
+				"	private static final class Snapshot {",
+				"		Long id;",
+				"		Long tag;",
+				"	}",
+				"}"
+		);
+
+		ASSERT.about(javaSources()).that(Arrays.asList(tagSource, noteSource))
+				.processedWith(ollieProcessors())
+				.compilesWithoutError()
+				.and()
+				.generatesSources(expectedSource);
+	}
+
 	@Test
 	public void tablesAreClasses() {
 		JavaFileObject source = JavaFileObjects.forSourceLines("ollie.test.Note",
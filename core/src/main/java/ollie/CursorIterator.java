@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import java.io.Closeable;
+import java.lang.reflect.Constructor;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Iterates the entities of an open cursor one row at a time. The cursor is closed once the last row has been
+ * returned, or when {@link #close()} is called.
+ * </p>
+ * <p>
+ * When the entity is reused a single instance is loaded with the values of each row in turn and the identity cache
+ * is bypassed, so iterating any number of rows runs in constant memory. References to the returned entity must not
+ * be kept across calls to {@link #next()}.
+ * </p>
+ *
+ * @param <T> The model type.
+ */
+public final class CursorIterator<T extends Model> implements Iterator<T>, Closeable {
+	private final Class<T> mCls;
+	private final Cursor mCursor;
+	private final Constructor<T> mConstructor;
+	private final int[] mIndices;
+	private final int mIdIndex;
+	private final boolean mReuseEntity;
+
+	private T mEntity;
+
+	/**
+	 * @param cls         The model class.
+	 * @param cursor      The result cursor.
+	 * @param reuseEntity Whether to load every row into the same instance without using the identity cache.
+	 */
+	public CursorIterator(Class<T> cls, Cursor cursor, boolean reuseEntity) {
+		try {
+			mConstructor = cls.getConstructor();
+		} catch (NoSuchMethodException e) {
+			cursor.close();
+			throw new IllegalArgumentException("Model requires a public no-argument constructor.", e);
+		}
+
+		mCls = cls;
+		mCursor = cursor;
+		mIndices = Ollie.getColumnIndices(cls, cursor);
+		mIdIndex = cursor.getColumnIndex(BaseColumns._ID);
+		mReuseEntity = reuseEntity;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (mCursor.isClosed()) {
+			return false;
+		}
+		if (mCursor.getPosition() + 1 < mCursor.getCount()) {
+			return true;
+		}
+
+		close();
+		return false;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		mCursor.moveToNext();
+		try {
+			if (!mReuseEntity) {
+				return Ollie.loadEntity(mCls, mConstructor, mCursor, mIndices, mIdIndex);
+			}
+			if (mEntity == null) {
+				mEntity = mConstructor.newInstance();
+			}
+			Ollie.load(mEntity, mCursor, mIndices);
+			return mEntity;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to load entity.", e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		mCursor.close();
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import ollie.internal.LongLruCache;
+
+import java.io.Closeable;
+import java.lang.reflect.Constructor;
+import java.util.AbstractList;
+
+/**
+ * <p>
+ * A read-only list of entities backed by an open cursor. An entity is loaded from the cursor the first time its
+ * position is accessed, and only a bounded window of recently accessed entities is held by the list, so memory use
+ * does not grow with the number of rows.
+ * </p>
+ * <p>
+ * The list owns the cursor and must be closed when it is no longer needed.
+ * </p>
+ *
+ * @param <T> The model type.
+ */
+public final class CursorList<T extends Model> extends AbstractList<T> implements Closeable {
+	public static final int DEFAULT_WINDOW_SIZE = 64;
+
+	private final Class<T> mCls;
+	private final Cursor mCursor;
+	private final Constructor<T> mConstructor;
+	private final int[] mIndices;
+	private final int mIdIndex;
+	private final LongLruCache<T> mWindow;
+
+	/**
+	 * @param cls    The model class.
+	 * @param cursor The result cursor.
+	 */
+	public CursorList(Class<T> cls, Cursor cursor) {
+		this(cls, cursor, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param cls        The model class.
+	 * @param cursor     The result cursor.
+	 * @param windowSize The maximum number of loaded entities held by the list.
+	 */
+	public CursorList(Class<T> cls, Cursor cursor, int windowSize) {
+		try {
+			mConstructor = cls.getConstructor();
+		} catch (NoSuchMethodException e) {
+			cursor.close();
+			throw new IllegalArgumentException("Model requires a public no-argument constructor.", e);
+		}
+
+		mCls = cls;
+		mCursor = cursor;
+		mIndices = Ollie.getColumnIndices(cls, cursor);
+		mIdIndex = cursor.getColumnIndex(BaseColumns._ID);
+		mWindow = new LongLruCache<T>(windowSize);
+	}
+
+	@Override
+	public synchronized T get(int location) {
+		if (mCursor.isClosed()) {
+			throw new IllegalStateException("CursorList is closed.");
+		}
+		if (location < 0 || location >= mCursor.getCount()) {
+			throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + mCursor.getCount());
+		}
+
+		T entity = mWindow.get(location);
+		if (entity == null) {
+			mCursor.moveToPosition(location);
+			try {
+				entity = Ollie.loadEntity(mCls, mConstructor, mCursor, mIndices, mIdIndex);
+			} catch (Exception e) {
+				throw new RuntimeException("Failed to load entity.", e);
+			}
+			mWindow.put(location, entity);
+		}
+
+		return entity;
+	}
+
+	@Override
+	public synchronized int size() {
+		return mCursor.isClosed() ? 0 : mCursor.getCount();
+	}
+
+	@Override
+	public synchronized void close() {
+		mCursor.close();
+		mWindow.evictAll();
+	}
+
+	public synchronized boolean isClosed() {
+		return mCursor.isClosed();
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie;
+
+import android.database.sqlite.SQLiteDatabase;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Dispatches table changes made by models, executable queries and the content provider to in-process observers, and
+ * to content observers when an {@link OllieProvider} is implemented.
+ * </p>
+ * <p>
+ * Changes made inside a transaction begun with {@link Ollie#beginTransaction()} are held until the outermost
+ * transaction ends, then delivered once per table if it was committed, or dropped if it was rolled back.
+ * </p>
+ * <p>
+ * Changes made inside a transaction begun directly on {@link Ollie#getDatabase()} are held until that transaction
+ * ends, then delivered once per table from a background thread. Since the outcome of such a transaction is not
+ * known, they are delivered even if it was rolled back.
+ * </p>
+ */
+public final class InvalidationTracker {
+	private static final Subject<String, String> sInvalidations =
+			new SerializedSubject<String, String>(PublishSubject.<String>create());
+
+	// Changes made in transactions begun directly on the database, guarded by itself.
+	private static final Map<Class<? extends Model>, Long> sDeferredChanges =
+			new LinkedHashMap<Class<? extends Model>, Long>();
+
+	private static final ThreadLocal<Transaction> sTransaction = new ThreadLocal<Transaction>() {
+		@Override
+		protected Transaction initialValue() {
+			return new Transaction();
+		}
+	};
+
+	private InvalidationTracker() {
+	}
+
+	/**
+	 * Notify observers that a table has changed.
+	 *
+	 * @param type The model type.
+	 */
+	public static void notifyChanged(Class<? extends Model> type) {
+		notifyChanged(type, null);
+	}
+
+	/**
+	 * Notify observers that a row has changed.
+	 *
+	 * @param type The model type.
+	 * @param id   The row id, or null if any number of rows changed.
+	 */
+	public static void notifyChanged(Class<? extends Model> type, Long id) {
+		final Transaction transaction = sTransaction.get();
+		if (transaction.isActive()) {
+			transaction.add(type, id);
+		} else if (isInDatabaseTransaction()) {
+			defer(type, id);
+		} else {
+			dispatch(type, id);
+		}
+	}
+
+	/**
+	 * Observe changes to the given tables.
+	 *
+	 * @param tables The table names.
+	 * @return An observable of changed table names.
+	 */
+	public static Observable<String> observe(String... tables) {
+		final Set<String> tableSet = new HashSet<String>(Arrays.asList(tables));
+		return sInvalidations.filter(new Func1<String, Boolean>() {
+			@Override
+			public Boolean call(String table) {
+				return tableSet.contains(table);
+			}
+		});
+	}
+
+	static void beginTransaction() {
+		sTransaction.get().begin();
+	}
+
+	static void setTransactionSuccessful() {
+		sTransaction.get().setSuccessful();
+	}
+
+	static void endTransaction(boolean ended) {
+		final Map<Class<? extends Model>, Long> changes = sTransaction.get().end(ended);
+		if (changes != null) {
+			// The transaction may itself be nested in one begun directly on the database.
+			final boolean deferred = isInDatabaseTransaction();
+			for (Map.Entry<Class<? extends Model>, Long> change : changes.entrySet()) {
+				if (deferred) {
+					defer(change.getKey(), change.getValue());
+				} else {
+					dispatch(change.getKey(), change.getValue());
+				}
+			}
+		}
+	}
+
+	private static boolean isInDatabaseTransaction() {
+		final SQLiteDatabase db = Ollie.getDatabase();
+		return db != null && db.inTransaction();
+	}
+
+	private static void defer(Class<? extends Model> type, Long id) {
+		synchronized (sDeferredChanges) {
+			final boolean scheduled = !sDeferredChanges.isEmpty();
+			addChange(sDeferredChanges, type, id);
+			if (scheduled) {
+				return;
+			}
+		}
+
+		final Scheduler.Worker worker = Schedulers.io().createWorker();
+		worker.schedule(new Action0() {
+			@Override
+			public void call() {
+				try {
+					dispatchDeferred();
+				} finally {
+					worker.unsubscribe();
+				}
+			}
+		});
+	}
+
+	// Waits for the writing thread's transaction to end by beginning one, which blocks until the database connection
+	// is released.
+	private static void dispatchDeferred() {
+		final Map<Class<? extends Model>, Long> changes;
+		final SQLiteDatabase db = Ollie.getDatabase();
+		db.beginTransaction();
+		try {
+			synchronized (sDeferredChanges) {
+				changes = new LinkedHashMap<Class<? extends Model>, Long>(sDeferredChanges);
+				sDeferredChanges.clear();
+			}
+		} finally {
+			db.endTransaction();
+		}
+
+		for (Map.Entry<Class<? extends Model>, Long> change : changes.entrySet()) {
+			dispatch(change.getKey(), change.getValue());
+		}
+	}
+
+	// Notify the row when only one row of the table changed, otherwise the table.
+	private static void addChange(Map<Class<? extends Model>, Long> changes, Class<? extends Model> type, Long id) {
+		if (!changes.containsKey(type)) {
+			changes.put(type, id);
+		} else if (id == null || !id.equals(changes.get(type))) {
+			changes.put(type, null);
+		}
+	}
+
+	private static void dispatch(Class<? extends Model> type, Long id) {
+		sInvalidations.onNext(Ollie.getTableName(type));
+		if (OllieProvider.isImplemented()) {
+			Ollie.getContext().getContentResolver().notifyChange(OllieProvider.createUri(type, id), null);
+		}
+	}
+
+	// Mirrors SQLiteDatabase transaction nesting: the outermost transaction commits only if every nested
+	// transaction was marked successful.
+	private static final class Transaction {
+		private final List<Boolean> mSuccessful = new ArrayList<Boolean>();
+		private final Map<Class<? extends Model>, Long> mChanges = new LinkedHashMap<Class<? extends Model>, Long>();
+		private boolean mFailed;
+
+		boolean isActive() {
+			return !mSuccessful.isEmpty();
+		}
+
+		void begin() {
+			mSuccessful.add(false);
+		}
+
+		void setSuccessful() {
+			mSuccessful.set(mSuccessful.size() - 1, true);
+		}
+
+		void add(Class<? extends Model> type, Long id) {
+			addChange(mChanges, type, id);
+		}
+
+		// Returns the changes to deliver once the outermost transaction has committed.
+		Map<Class<? extends Model>, Long> end(boolean ended) {
+			final boolean successful = mSuccessful.remove(mSuccessful.size() - 1);
+			if (!successful || !ended) {
+				mFailed = true;
+			}
+			if (isActive()) {
+				return null;
+			}
+
+			final Map<Class<? extends Model>, Long> changes = mFailed ? null :
+					new LinkedHashMap<Class<? extends Model>, Long>(mChanges);
+			mChanges.clear();
+			mFailed = false;
+			return changes;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie;
+
+/**
+ * <p>
+ * A reference to a record which is loaded on first access. Declare a column as {@code Lazy<Author>} instead of
+ * {@code Author} to store only the foreign id when the owning record is loaded.
+ * </p>
+ * <pre>
+ * &#64;Column("author")
+ * &#64;ForeignKey
+ * public Lazy&lt;Author&gt; author;
+ * </pre>
+ *
+ * @param <T> The model type.
+ */
+public final class Lazy<T extends Model> {
+	private final Class<T> mCls;
+	private final Long mId;
+	private volatile T mEntity;
+	private volatile boolean mLoaded;
+
+	/**
+	 * Create a reference to the record with the given id, which is loaded on first access.
+	 *
+	 * @param cls The model class.
+	 * @param id  The record id.
+	 */
+	public Lazy(Class<T> cls, Long id) {
+		mCls = cls;
+		mId = id;
+	}
+
+	private Lazy(T entity) {
+		mCls = (Class<T>) entity.getClass();
+		mId = entity.id;
+		mEntity = entity;
+		mLoaded = true;
+	}
+
+	/**
+	 * Create a reference to a record which is already loaded.
+	 *
+	 * @param entity The record.
+	 * @return The reference, or null if the record is null.
+	 */
+	public static <T extends Model> Lazy<T> of(T entity) {
+		return entity != null ? new Lazy<T>(entity) : null;
+	}
+
+	/**
+	 * Returns the record id without loading the record.
+	 *
+	 * @return The record id.
+	 */
+	public Long getId() {
+		final T entity = mEntity;
+		return entity != null ? entity.id : mId;
+	}
+
+	/**
+	 * Returns the record, loading it from the cache or the database on first access.
+	 *
+	 * @return The record, or null if it does not exist.
+	 */
+	public T get() {
+		if (!mLoaded) {
+			synchronized (this) {
+				if (!mLoaded) {
+					mEntity = mId != null ? Ollie.getOrFindEntity(mCls, mId) : null;
+					mLoaded = true;
+				}
+			}
+		}
+		return mEntity;
+	}
+
+	/**
+	 * Returns whether the record has been loaded.
+	 *
+	 * @return True if the record has been loaded.
+	 */
+	public boolean isLoaded() {
+		return mLoaded;
+	}
+}
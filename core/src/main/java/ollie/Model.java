@@ -24,6 +24,10 @@ import ollie.annotation.PrimaryKey;
 import ollie.annotation.Table;
 import ollie.query.Select;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * A Model represents a single table record and uses annotations to define the table's schema. The Model contains
  * methods for interacting with the database directly.
@@ -37,6 +41,9 @@ public abstract class Model {
 	@AutoIncrement
 	public Long id;
 
+	// The column values as of the last load or save, held by the model adapter to write only changed columns.
+	transient Object mSnapshot;
+
 	/**
 	 * <p>
 	 * Find a record by id.
@@ -50,6 +57,49 @@ public abstract class Model {
 		return Select.from(cls).where(_ID + "=?", id).fetchSingle();
 	}
 
+	/**
+	 * <p>
+	 * Persist a collection of records to the database in a single transaction. Each record is inserted if it does
+	 * not exist and updated if it does exist. If any record fails to save the transaction is rolled back, the ids
+	 * of records which were being inserted are reset to null and an {@link android.database.SQLException} is thrown.
+	 * </p>
+	 * <p>
+	 * Observers are notified once per affected table rather than once per record, after the transaction commits.
+	 * </p>
+	 *
+	 * @param entities The records to save.
+	 */
+	public static final void saveAll(Collection<? extends Model> entities) {
+		Ollie.saveAll(entities);
+		putAndNotify(entities);
+	}
+
+	/**
+	 * <p>
+	 * Upsert a collection of records in a single transaction, as with {@link #upsert()}. If any record fails to save
+	 * the transaction is rolled back, the ids of records which were being inserted are reset to null and an
+	 * {@link android.database.SQLException} is thrown.
+	 * </p>
+	 *
+	 * @param entities The records to upsert.
+	 */
+	public static final void upsertAll(Collection<? extends Model> entities) {
+		Ollie.upsertAll(entities);
+		putAndNotify(entities);
+	}
+
+	private static void putAndNotify(Collection<? extends Model> entities) {
+		Ollie.putEntities(entities);
+
+		final Set<Class<? extends Model>> types = new HashSet<Class<? extends Model>>();
+		for (Model entity : entities) {
+			types.add(entity.getClass());
+		}
+		for (Class<? extends Model> type : types) {
+			notifyChange(type, null);
+		}
+	}
+
 	/**
 	 * <p>
 	 * Load this objects values from a cursor.
@@ -62,18 +112,54 @@ public abstract class Model {
 		Ollie.putEntity(this);
 	}
 
+	/**
+	 * <p>
+	 * Load this objects values from a cursor using column indices resolved once for the whole cursor.
+	 * </p>
+	 *
+	 * @param cursor
+	 * @param indices The column indices returned by the model adapter.
+	 */
+	final void load(Cursor cursor, int[] indices) {
+		Ollie.load(this, cursor, indices);
+		Ollie.putEntity(this);
+	}
+
 	/**
 	 * <p>
 	 * Persist the record to the database. Inserts the record if it does not exists and updates the record if it
 	 * does exists.
 	 * </p>
+	 * <p>
+	 * Updates write only the columns which changed since the record was loaded or last saved. Saving an unchanged
+	 * record does not touch the database or notify observers.
+	 * </p>
 	 *
 	 * @return The record id.
 	 */
 	public final Long save() {
-		id = Ollie.save(this);
-		Ollie.putEntity(this);
-		notifyChange();
+		if (Ollie.save(this)) {
+			Ollie.putEntity(this);
+			notifyChange();
+		}
+		return id;
+	}
+
+	/**
+	 * <p>
+	 * Persist the record to the database, matching existing rows by the model's {@link ollie.annotation.Unique}
+	 * column rather than by id. Inserts the record if no row has the same unique value and otherwise updates that
+	 * row and assigns its id to the record. Records which already have an id, or whose model has no unique column,
+	 * are saved as with {@link #save()}.
+	 * </p>
+	 *
+	 * @return The record id.
+	 */
+	public final Long upsert() {
+		if (Ollie.upsert(this)) {
+			Ollie.putEntity(this);
+			notifyChange();
+		}
 		return id;
 	}
 
@@ -95,9 +181,11 @@ public abstract class Model {
 	 * </p>
 	 */
 	private void notifyChange() {
-		if (OllieProvider.isImplemented()) {
-			Ollie.getContext().getContentResolver().notifyChange(OllieProvider.createUri(getClass(), id), null);
-		}
+		notifyChange(getClass(), id);
+	}
+
+	private static void notifyChange(Class<? extends Model> type, Long id) {
+		InvalidationTracker.notifyChanged(type, id);
 	}
 
 	@Override
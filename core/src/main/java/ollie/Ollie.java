@@ -18,30 +18,54 @@ package ollie;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.*;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.os.Build;
 import android.provider.BaseColumns;
-import android.support.v4.util.LruCache;
 import android.util.Log;
 import ollie.internal.AdapterHolder;
+import ollie.internal.LongCache;
+import ollie.internal.LongLruCache;
+import ollie.internal.LongReferenceCache;
 import ollie.internal.ModelAdapter;
+import ollie.internal.QueryPlanDiagnostics;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class Ollie {
 	public static final int DEFAULT_CACHE_SIZE = 1024;
 
 	private static final String TAG = "Ollie";
 
+	/**
+	 * The maximum number of bound arguments in a single statement, SQLITE_MAX_VARIABLE_NUMBER.
+	 */
+	public static final int MAX_SQL_VARIABLES = 999;
+
+	// Entities loaded eagerly for the cursor the current thread is processing.
+	private static final ThreadLocal<Map<Class<? extends Model>, Map<Long, Model>>> sIncludedEntities =
+			new ThreadLocal<Map<Class<? extends Model>, Map<Long, Model>>>();
+
 	private static Context sContext;
 	private static AdapterHolder sAdapterHolder;
 	private static DatabaseHelper sDatabaseHelper;
 	private static SQLiteDatabase sSQLiteDatabase;
-	private static LruCache<String, Model> sCache;
+	private static ConcurrentMap<Class<? extends Model>, LongCache<Model>> sCaches;
+	private static int sCacheSize;
 	private static LogLevel sLogLevel = LogLevel.NONE;
+	private static SynchronousMode sSynchronousMode = SynchronousMode.DEFAULT;
 	private static boolean sInitialized = false;
 
 	/**
@@ -66,6 +90,39 @@ public final class Ollie {
 		}
 	}
 
+	/**
+	 * Controls how often SQLite syncs writes to disk.
+	 * <a href="http://www.sqlite.org/pragma.html#pragma_synchronous">http://www.sqlite.org/pragma.html#pragma_synchronous</a>
+	 */
+	public enum SynchronousMode {
+		/**
+		 * Do not specify a synchronous mode.
+		 */
+		DEFAULT(null),
+		/**
+		 * Hand data off to the operating system without syncing.
+		 */
+		OFF("OFF"),
+		/**
+		 * Sync at the most critical moments. With write-ahead logging this is durable except across power loss.
+		 */
+		NORMAL("NORMAL"),
+		/**
+		 * Sync before every commit.
+		 */
+		FULL("FULL");
+
+		private String mKeyword;
+
+		SynchronousMode(String keyword) {
+			mKeyword = keyword;
+		}
+
+		public String keyword() {
+			return mKeyword;
+		}
+	}
+
 	private Ollie() {
 	}
 
@@ -92,7 +149,7 @@ public final class Ollie {
 	 * @param context   Context
 	 * @param name      The database name.
 	 * @param version   The database version.
-	 * @param cacheSize The cache size.
+	 * @param cacheSize The cache size of each model class.
 	 */
 	public static void init(Context context, String name, int version, int cacheSize) {
 		init(context, name, version, cacheSize, LogLevel.NONE);
@@ -116,10 +173,28 @@ public final class Ollie {
 	 * @param context   Context
 	 * @param name      The database name.
 	 * @param version   The database version.
-	 * @param cacheSize The cache size.
+	 * @param cacheSize The cache size of each model class.
 	 * @param logLevel  The logging level.
 	 */
 	public static void init(Context context, String name, int version, int cacheSize, LogLevel logLevel) {
+		init(context, name, version, cacheSize, logLevel, false, SynchronousMode.DEFAULT);
+	}
+
+	/**
+	 * Initialize the database. Must be called before interacting with the database.
+	 *
+	 * @param context                  Context
+	 * @param name                     The database name.
+	 * @param version                  The database version.
+	 * @param cacheSize                The cache size of each model class.
+	 * @param logLevel                 The logging level.
+	 * @param writeAheadLoggingEnabled Whether to enable write-ahead logging, which allows queries to run on a
+	 *                                 connection pool concurrently with writes. Requires API 11.
+	 * @param synchronousMode          The synchronous mode.
+	 */
+	public static void init(Context context, String name, int version, int cacheSize, LogLevel logLevel,
+			boolean writeAheadLoggingEnabled, SynchronousMode synchronousMode) {
+
 		sLogLevel = logLevel;
 
 		if (sInitialized) {
@@ -140,8 +215,18 @@ public final class Ollie {
 
 		sContext = context.getApplicationContext();
 		sDatabaseHelper = new DatabaseHelper(sContext, name, version);
+		sSynchronousMode = synchronousMode;
 		sSQLiteDatabase = sDatabaseHelper.getWritableDatabase();
-		sCache = new LruCache<String, Model>(cacheSize);
+		if (writeAheadLoggingEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			if (sSQLiteDatabase.enableWriteAheadLogging()) {
+				// Enabling write-ahead logging reconfigures the connection with the platform's WAL synchronous mode.
+				executeSynchronousPragma(sSQLiteDatabase);
+			} else if (sLogLevel.log(LogLevel.BASIC)) {
+				Log.d(TAG, "Write-ahead logging is not supported by this database.");
+			}
+		}
+		sCaches = new ConcurrentHashMap<Class<? extends Model>, LongCache<Model>>();
+		sCacheSize = cacheSize;
 
 		sInitialized = true;
 	}
@@ -150,14 +235,62 @@ public final class Ollie {
 		return sContext;
 	}
 
+	/**
+	 * Returns the database used for writes. Writes always run on the primary connection.
+	 *
+	 * @return The database.
+	 */
 	public static SQLiteDatabase getDatabase() {
 		return sSQLiteDatabase;
 	}
 
+	/**
+	 * Returns the database used for read-only queries. When write-ahead logging is enabled, SQLiteDatabase runs
+	 * queries issued outside of a transaction on its reader connection pool, so they proceed concurrently with a
+	 * writer. Queries issued inside a transaction use the primary connection and see uncommitted changes.
+	 *
+	 * @return The database.
+	 */
+	public static SQLiteDatabase getReadableDatabase() {
+		return sSQLiteDatabase;
+	}
+
 	public static <T extends Model> String getTableName(Class<T> cls) {
 		return sAdapterHolder.getModelAdapter(cls).getTableName();
 	}
 
+	// Transaction methods
+
+	/**
+	 * Begin a transaction on the database. Change notifications for models and queries executed in the transaction
+	 * are delivered once per table when the outermost transaction ends, and only if it was committed.
+	 */
+	public static void beginTransaction() {
+		sSQLiteDatabase.beginTransaction();
+		InvalidationTracker.beginTransaction();
+	}
+
+	/**
+	 * Mark the current transaction as successful.
+	 */
+	public static void setTransactionSuccessful() {
+		sSQLiteDatabase.setTransactionSuccessful();
+		InvalidationTracker.setTransactionSuccessful();
+	}
+
+	/**
+	 * End the current transaction, committing it if it and every nested transaction was marked successful.
+	 */
+	public static void endTransaction() {
+		boolean ended = false;
+		try {
+			sSQLiteDatabase.endTransaction();
+			ended = true;
+		} finally {
+			InvalidationTracker.endTransaction(ended);
+		}
+	}
+
 	// Convenience methods
 
 	/**
@@ -172,14 +305,10 @@ public final class Ollie {
 		try {
 			Constructor<T> entityConstructor = cls.getConstructor();
 			if (cursor.moveToFirst()) {
+				final int[] indices = getColumnIndices(cls, cursor);
+				final int idIndex = cursor.getColumnIndex(BaseColumns._ID);
 				do {
-					T entity = getEntity(cls, cursor.getLong(cursor.getColumnIndex(BaseColumns._ID)));
-					if (entity == null) {
-						entity = entityConstructor.newInstance();
-					}
-
-					entity.load(cursor);
-					entities.add(entity);
+					entities.add(loadEntity(cls, entityConstructor, cursor, indices, idIndex));
 				}
 				while (cursor.moveToNext());
 			}
@@ -190,6 +319,77 @@ public final class Ollie {
 		return entities;
 	}
 
+	/**
+	 * Iterate over a cursor and load entities. The Model-typed columns named in includes are loaded up front with one
+	 * query per referenced table, rather than one query per row.
+	 *
+	 * @param cls      The model class.
+	 * @param cursor   The result cursor.
+	 * @param includes The names of Model-typed columns to load eagerly.
+	 * @return The list of entities.
+	 */
+	public static <T extends Model> List<T> processCursor(Class<T> cls, Cursor cursor, String... includes) {
+		if (includes == null || includes.length == 0) {
+			return processCursor(cls, cursor);
+		}
+
+		final Map<Class<? extends Model>, Map<Long, Model>> previous = sIncludedEntities.get();
+		sIncludedEntities.set(loadReferences(cls, cursor, includes));
+		try {
+			return processCursor(cls, cursor);
+		} finally {
+			sIncludedEntities.set(previous);
+		}
+	}
+
+	/**
+	 * Load the entity in the first row of a cursor, without reading the remaining rows. Closes the cursor when
+	 * finished.
+	 *
+	 * @param cls      The model class.
+	 * @param cursor   The result cursor.
+	 * @param includes The names of Model-typed columns to load eagerly.
+	 * @return The entity, or null if the cursor is empty.
+	 */
+	public static <T extends Model> T processSingleAndCloseCursor(Class<T> cls, Cursor cursor, String... includes) {
+		final Map<Class<? extends Model>, Map<Long, Model>> previous = sIncludedEntities.get();
+		try {
+			if (!cursor.moveToFirst()) {
+				return null;
+			}
+			if (includes != null && includes.length > 0) {
+				sIncludedEntities.set(loadReferences(cls, cursor, includes));
+				cursor.moveToFirst();
+			}
+
+			return loadCurrentEntity(cls, cursor);
+		} finally {
+			sIncludedEntities.set(previous);
+			cursor.close();
+		}
+	}
+
+	private static <T extends Model> T loadCurrentEntity(Class<T> cls, Cursor cursor) {
+		try {
+			return loadEntity(cls, cls.getConstructor(), cursor, getColumnIndices(cls, cursor),
+					cursor.getColumnIndex(BaseColumns._ID));
+		} catch (Exception e) {
+			Log.e(TAG, "Failed to process cursor.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the cached entity with the given id without querying the database.
+	 *
+	 * @param cls The model class.
+	 * @param id  The entity id.
+	 * @return The cached entity, or null.
+	 */
+	public static <T extends Model> T getCachedEntity(Class<T> cls, long id) {
+		return getEntity(cls, id);
+	}
+
 	/**
 	 * Iterate over a cursor and load entities. Closes the cursor when finished.
 	 *
@@ -203,6 +403,98 @@ public final class Ollie {
 		return entities;
 	}
 
+	/**
+	 * Iterate over a cursor and load entities, loading the Model-typed columns named in includes up front. Closes
+	 * the cursor when finished.
+	 *
+	 * @param cls      The model class.
+	 * @param cursor   The result cursor.
+	 * @param includes The names of Model-typed columns to load eagerly.
+	 * @return The list of entities.
+	 */
+	public static <T extends Model> List<T> processAndCloseCursor(Class<T> cls, Cursor cursor, String... includes) {
+		List<T> entities = processCursor(cls, cursor, includes);
+		cursor.close();
+		return entities;
+	}
+
+	// Collects the ids referenced by each included column and loads the ones which are not cached with chunked IN
+	// queries. The loaded entities are held here for the duration of the load, so they are found even when the
+	// cache of their model is disabled or too small to hold them all.
+	private static Map<Class<? extends Model>, Map<Long, Model>> loadReferences(Class<? extends Model> cls,
+			Cursor cursor, String[] columns) {
+
+		final ModelAdapter adapter = sAdapterHolder.getModelAdapter(cls);
+		final Map<Class<? extends Model>, Map<Long, Model>> references =
+				new HashMap<Class<? extends Model>, Map<Long, Model>>();
+
+		for (String column : columns) {
+			final Class<? extends Model> type = adapter.getReferenceType(column);
+			if (type == null) {
+				throw new IllegalArgumentException(cls.getName() + "." + column + " does not reference a model.");
+			}
+
+			final int index = cursor.getColumnIndex(column);
+			if (index < 0) {
+				continue;
+			}
+
+			Map<Long, Model> entities = references.get(type);
+			if (entities == null) {
+				entities = new HashMap<Long, Model>();
+				references.put(type, entities);
+			}
+
+			final Set<Long> missingIds = new LinkedHashSet<Long>();
+			if (cursor.moveToFirst()) {
+				do {
+					if (cursor.isNull(index)) {
+						continue;
+					}
+
+					final long id = cursor.getLong(index);
+					if (entities.containsKey(id) || missingIds.contains(id)) {
+						continue;
+					}
+
+					final Model entity = getEntity(type, id);
+					if (entity != null) {
+						entities.put(id, entity);
+					} else {
+						missingIds.add(id);
+					}
+				}
+				while (cursor.moveToNext());
+			}
+
+			findEntities(type, new ArrayList<Long>(missingIds), entities);
+		}
+
+		return references;
+	}
+
+	private static void findEntities(Class<? extends Model> cls, List<Long> ids, Map<Long, Model> entities) {
+		for (int start = 0; start < ids.size(); start += MAX_SQL_VARIABLES) {
+			final List<Long> chunk = ids.subList(start, Math.min(start + MAX_SQL_VARIABLES, ids.size()));
+			final String[] args = new String[chunk.size()];
+			final StringBuilder sql = new StringBuilder("SELECT * FROM ")
+					.append(getTableName(cls))
+					.append(" WHERE ")
+					.append(BaseColumns._ID)
+					.append(" IN (");
+
+			for (int i = 0; i < args.length; i++) {
+				sql.append(i > 0 ? ", ?" : "?");
+				args[i] = chunk.get(i).toString();
+			}
+			sql.append(")");
+
+			for (Model entity : processAndCloseCursor(cls, getReadableDatabase().rawQuery(sql.toString(), args))) {
+				entities.put(entity.id, entity);
+			}
+		}
+	}
+
 	// Finder methods
 
 	static <D, S> TypeAdapter<D, S> getTypeAdapter(Class<D> cls) {
@@ -215,21 +507,42 @@ public final class Ollie {
 
 	// Cache methods
 
-	static synchronized <T extends Model> void putEntity(T entity) {
+	// Each model class has its own cache, configured with @Cache, so cache access only contends with threads using
+	// the same model class.
+	// Adapter loads and saves are not serialized by Ollie; each save uses a statement of its own and transactions
+	// are serialized by SQLiteDatabase.
+
+	static <T extends Model> void putEntity(T entity) {
 		if (entity.id != null) {
-			sCache.put(getEntityIdentifier(entity.getClass(), entity.id), entity);
+			getCache(entity.getClass()).put(entity.id, entity);
 		}
 	}
 
-	static synchronized <T extends Model> T getEntity(Class<T> cls, long id) {
-		return (T) sCache.get(getEntityIdentifier(cls, id));
+	static void putEntities(Collection<? extends Model> entities) {
+		for (Model entity : entities) {
+			putEntity(entity);
+		}
 	}
 
-	static synchronized <T extends Model> void removeEntity(T entity) {
-		sCache.remove(getEntityIdentifier(entity.getClass(), entity.id));
+	static <T extends Model> T getEntity(Class<T> cls, long id) {
+		return (T) getCache(cls).get(id);
 	}
 
-	static synchronized <T extends Model> T getOrFindEntity(Class<T> cls, long id) {
+	static <T extends Model> void removeEntity(T entity) {
+		if (entity.id != null) {
+			getCache(entity.getClass()).remove(entity.id);
+		}
+	}
+
+	static <T extends Model> T getOrFindEntity(Class<T> cls, long id) {
+		final Map<Class<? extends Model>, Map<Long, Model>> included = sIncludedEntities.get();
+		if (included != null && included.containsKey(cls)) {
+			final Model entity = included.get(cls).get(id);
+			if (entity != null) {
+				return (T) entity;
+			}
+		}
+
 		T entity = Ollie.getEntity(cls, id);
 		if (entity == null) {
 			entity = Model.find(cls, id);
@@ -239,22 +552,167 @@ public final class Ollie {
 
 	// Model adapter methods
 
-	static synchronized <T extends Model> void load(T entity, Cursor cursor) {
-		sAdapterHolder.getModelAdapter(entity.getClass()).load(entity, cursor);
+	static int[] getColumnIndices(Class<? extends Model> cls, Cursor cursor) {
+		return sAdapterHolder.getModelAdapter(cls).getColumnIndices(cursor);
+	}
+
+	/**
+	 * Load the entity at the current cursor position. Reuses the cached entity with the same id if there is one.
+	 */
+	static <T extends Model> T loadEntity(Class<T> cls, Constructor<T> constructor, Cursor cursor, int[] indices,
+			int idIndex) throws InstantiationException, IllegalAccessException, InvocationTargetException {
+
+		T entity = getEntity(cls, cursor.getLong(idIndex));
+		if (entity == null) {
+			entity = constructor.newInstance();
+		}
+
+		entity.load(cursor, indices);
+		return entity;
 	}
 
-	static synchronized <T extends Model> Long save(T entity) {
-		return sAdapterHolder.getModelAdapter(entity.getClass()).save(entity, sSQLiteDatabase);
+	static <T extends Model> void load(T entity, Cursor cursor) {
+		getModelAdapter(entity).load(entity, cursor);
 	}
 
-	static synchronized <T extends Model> void delete(T entity) {
-		sAdapterHolder.getModelAdapter(entity.getClass()).delete(entity, sSQLiteDatabase);
+	static <T extends Model> void load(T entity, Cursor cursor, int[] indices) {
+		getModelAdapter(entity).load(entity, cursor, indices);
+	}
+
+	/**
+	 * Saves the entity, writing only the columns which changed since it was loaded or last saved.
+	 *
+	 * @return False if the entity was unchanged and the database was not touched, or could not be written.
+	 */
+	static <T extends Model> boolean save(T entity) {
+		return save(getModelAdapter(entity), entity);
+	}
+
+	/**
+	 * Inserts the entity or updates the row with the same upsert key, in a transaction.
+	 *
+	 * @return False if the entity could not be written.
+	 */
+	static <T extends Model> boolean upsert(T entity) {
+		beginTransaction();
+		try {
+			final boolean written = upsert(getModelAdapter(entity), entity);
+			setTransactionSuccessful();
+			return written;
+		} finally {
+			endTransaction();
+		}
+	}
+
+	static void saveAll(Collection<? extends Model> entities) {
+		saveAll(entities, false);
+	}
+
+	static void upsertAll(Collection<? extends Model> entities) {
+		saveAll(entities, true);
+	}
+
+	static <T extends Model> void delete(T entity) {
+		getModelAdapter(entity).delete(entity, sSQLiteDatabase);
+		entity.mSnapshot = null;
 	}
 
 	// Private methods
 
-	private static String getEntityIdentifier(Class<? extends Model> cls, long id) {
-		return cls.getName() + "@" + id;
+	private static void saveAll(Collection<? extends Model> entities, boolean upsert) {
+		final List<Model> inserted = new ArrayList<Model>();
+		boolean successful = false;
+
+		beginTransaction();
+		try {
+			for (Model entity : entities) {
+				if (entity.id == null) {
+					inserted.add(entity);
+				}
+				if (upsert) {
+					upsert(getModelAdapter(entity), entity);
+				} else {
+					save(getModelAdapter(entity), entity);
+				}
+				// A failed insert leaves no id or -1, and must roll back the records saved before it.
+				if (entity.id == null || entity.id < 0) {
+					throw new SQLException("Error saving " + entity.getClass().getName());
+				}
+			}
+			setTransactionSuccessful();
+			successful = true;
+		} finally {
+			endTransaction();
+
+			// Ids assigned and values written inside a rolled back transaction do not exist.
+			if (!successful) {
+				for (Model entity : entities) {
+					entity.mSnapshot = null;
+				}
+				for (Model entity : inserted) {
+					entity.id = null;
+				}
+			}
+		}
+	}
+
+	private static <T extends Model> ModelAdapter<T> getModelAdapter(T entity) {
+		return sAdapterHolder.getModelAdapter(entity.getClass());
+	}
+
+	private static <T extends Model> boolean save(ModelAdapter<T> adapter, T entity) {
+		final long changedColumns = adapter.getChangedColumns(entity);
+		if (entity.id != null && changedColumns == 0) {
+			return false;
+		}
+
+		return updateSnapshot(adapter, entity, adapter.save(entity, sSQLiteDatabase, changedColumns));
+	}
+
+	private static <T extends Model> boolean upsert(ModelAdapter<T> adapter, T entity) {
+		return updateSnapshot(adapter, entity, adapter.upsert(entity, sSQLiteDatabase));
+	}
+
+	// Returns false if the entity could not be written.
+	private static <T extends Model> boolean updateSnapshot(ModelAdapter<T> adapter, T entity, Long id) {
+		if (id == null || id < 0) {
+			entity.mSnapshot = null;
+			return false;
+		}
+		adapter.takeSnapshot(entity);
+		return true;
+	}
+
+	private static void executeSynchronousPragma(SQLiteDatabase db) {
+		if (!sSynchronousMode.equals(SynchronousMode.DEFAULT)) {
+			db.execSQL("PRAGMA synchronous=" + sSynchronousMode.keyword() + ";");
+		}
+	}
+
+	private static LongCache<Model> getCache(Class<? extends Model> cls) {
+		LongCache<Model> cache = sCaches.get(cls);
+		if (cache == null) {
+			final LongCache<Model> newCache = createCache(sAdapterHolder.getModelAdapter(cls));
+			cache = sCaches.putIfAbsent(cls, newCache);
+			if (cache == null) {
+				cache = newCache;
+			}
+		}
+		return cache;
+	}
+
+	private static LongCache<Model> createCache(ModelAdapter modelAdapter) {
+		switch (modelAdapter.getCachePolicy()) {
+			case NONE:
+				return DisabledCache.INSTANCE;
+			case WEAK:
+				return new LongReferenceCache<Model>(false);
+			case SOFT:
+				return new LongReferenceCache<Model>(true);
+			default:
+				final int cacheSize = modelAdapter.getCacheSize();
+				return new LongLruCache<Model>(cacheSize > 0 ? cacheSize : sCacheSize);
+		}
 	}
 
 	// Public classes
@@ -263,15 +721,21 @@ public final class Ollie {
 		private Context mContext;
 		private String mName;
 		private int mVersion;
-		private int mCacheSize;
+		private int mModelCacheSize;
 		private LogLevel mLogLevel;
+		private boolean mWriteAheadLoggingEnabled;
+		private SynchronousMode mSynchronousMode;
+		private boolean mQueryPlanDiagnosticsEnabled;
 
 		public Builder(Context context) {
 			mContext = context;
 			mName = context.getPackageName();
 			mVersion = 1;
-			mCacheSize = DEFAULT_CACHE_SIZE;
+			mModelCacheSize = DEFAULT_CACHE_SIZE;
 			mLogLevel = LogLevel.NONE;
+			mWriteAheadLoggingEnabled = false;
+			mSynchronousMode = SynchronousMode.DEFAULT;
+			mQueryPlanDiagnosticsEnabled = false;
 		}
 
 		public Builder setName(String name) {
@@ -284,18 +748,60 @@ public final class Ollie {
 			return this;
 		}
 
-		public Builder setCacheSize(int cacheSize) {
-			mCacheSize = cacheSize;
+		/**
+		 * Sets the size of the LRU entity cache of each model class which does not declare its own size with
+		 * {@link ollie.annotation.Cache}. Every model class has a cache of its own, so up to this many entities are
+		 * cached per model class rather than in total.
+		 *
+		 * @param modelCacheSize The number of entities cached per model class.
+		 * @return The builder.
+		 */
+		public Builder setModelCacheSize(int modelCacheSize) {
+			mModelCacheSize = modelCacheSize;
 			return this;
 		}
 
+		/**
+		 * @deprecated The size now bounds the cache of each model class rather than a single cache shared by all
+		 * models. Use {@link #setModelCacheSize(int)}.
+		 */
+		@Deprecated
+		public Builder setCacheSize(int cacheSize) {
+			return setModelCacheSize(cacheSize);
+		}
+
 		public Builder setLogLevel(LogLevel logLevel) {
 			mLogLevel = logLevel;
 			return this;
 		}
 
+		public Builder setWriteAheadLoggingEnabled(boolean writeAheadLoggingEnabled) {
+			mWriteAheadLoggingEnabled = writeAheadLoggingEnabled;
+			return this;
+		}
+
+		public Builder setSynchronousMode(SynchronousMode synchronousMode) {
+			mSynchronousMode = synchronousMode;
+			return this;
+		}
+
+		/**
+		 * Runs EXPLAIN QUERY PLAN once for each distinct statement issued through the query builder and QueryUtils,
+		 * and logs full table scans and temporary b-trees along with the calling method. Intended for development
+		 * builds only.
+		 *
+		 * @param queryPlanDiagnosticsEnabled Whether to enable query plan diagnostics.
+		 * @return The builder.
+		 */
+		public Builder setQueryPlanDiagnosticsEnabled(boolean queryPlanDiagnosticsEnabled) {
+			mQueryPlanDiagnosticsEnabled = queryPlanDiagnosticsEnabled;
+			return this;
+		}
+
 		public void init() {
-			Ollie.init(mContext, mName, mVersion, mCacheSize, mLogLevel);
+			QueryPlanDiagnostics.setEnabled(mQueryPlanDiagnosticsEnabled);
+			Ollie.init(mContext, mName, mVersion, mModelCacheSize, mLogLevel, mWriteAheadLoggingEnabled,
+					mSynchronousMode);
 		}
 	}
 
@@ -329,6 +835,7 @@ public final class Ollie {
 			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
 				db.execSQL("PRAGMA foreign_keys=ON;");
 			}
+			executeSynchronousPragma(db);
 		}
 
 		private void executeCreate(SQLiteDatabase db) {
@@ -336,6 +843,10 @@ public final class Ollie {
 			for (ModelAdapter modelAdapter : sAdapterHolder.getModelAdapters()) {
 				tableDefinitions.add(modelAdapter.getSchema());
 			}
+			// Indices are created after all tables.
+			for (ModelAdapter modelAdapter : sAdapterHolder.getModelAdapters()) {
+				tableDefinitions.addAll(Arrays.asList(modelAdapter.getIndexSchemas()));
+			}
 
 			db.beginTransaction();
 			try {
@@ -371,6 +882,29 @@ public final class Ollie {
 		}
 	}
 
+	private static final class DisabledCache implements LongCache<Model> {
+		public static final DisabledCache INSTANCE = new DisabledCache();
+
+		@Override
+		public Model get(long key) {
+			return null;
+		}
+
+		@Override
+		public Model put(long key, Model value) {
+			return null;
+		}
+
+		@Override
+		public Model remove(long key) {
+			return null;
+		}
+
+		@Override
+		public void evictAll() {
+		}
+	}
+
 	private static final class LoggingCursorAdapter implements CursorFactory {
 		@Override
 		public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
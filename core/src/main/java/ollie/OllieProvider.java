@@ -17,14 +17,32 @@
 package ollie;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
 import android.util.SparseArray;
 import ollie.internal.ModelAdapter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static ollie.Ollie.LogLevel;
+import static ollie.Ollie.SynchronousMode;
 
 /**
  * <p>
@@ -41,8 +59,12 @@ import static ollie.Ollie.LogLevel;
  * </ul>
  */
 public abstract class OllieProvider extends ContentProvider {
+	private static final String TAG = "Ollie";
+
 	private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
 	private static final SparseArray<Class<? extends Model>> TYPE_CODES = new SparseArray<Class<? extends Model>>();
+	private static final Map<Class<? extends Model>, Uri> TABLE_URIS =
+			new ConcurrentHashMap<Class<? extends Model>, Uri>();
 
 	private static boolean sIsImplemented = false;
 	private static String sAuthority;
@@ -73,33 +95,40 @@ public abstract class OllieProvider extends ContentProvider {
 	 * @param type The model type.
 	 * @param id   The row Id.
 	 * @return The Uri for the model row.
+	 * @throws IllegalStateException If the provider has not been created yet, since its authority is unknown.
 	 */
 	public static Uri createUri(Class<? extends Model> type, Long id) {
-		final StringBuilder uri = new StringBuilder();
-		uri.append("content://");
-		uri.append(sAuthority);
-		uri.append("/");
-		uri.append(Ollie.getTableName(type).toLowerCase());
+		Uri uri = TABLE_URIS.get(type);
+		if (uri == null) {
+			if (sAuthority == null) {
+				throw new IllegalStateException("OllieProvider must be created before creating Uris.");
+			}
+			uri = createTableUri(Ollie.getTableName(type));
+			TABLE_URIS.put(type, uri);
+		}
 
 		if (id != null) {
-			uri.append("/");
-			uri.append(id.toString());
+			return ContentUris.withAppendedId(uri, id);
 		}
-
-		return Uri.parse(uri.toString());
+		return uri;
 	}
 
 	@Override
 	public boolean onCreate() {
-		Ollie.init(getContext(), getDatabaseName(), getDatabaseVersion(), getCacheSize(), getLogLevel());
+		Ollie.init(getContext(), getDatabaseName(), getDatabaseVersion(), getCacheSize(), getLogLevel(),
+				isWriteAheadLoggingEnabled(), getSynchronousMode());
 		sAuthority = getAuthority();
 		sIsImplemented = true;
 
+		TABLE_URIS.clear();
+
 		int i = 0;
 		for (ModelAdapter modelAdapter : Ollie.getModelAdapters()) {
 			final int tableKey = (i * 2) + 1;
 			final int itemKey = (i * 2) + 2;
 
+			TABLE_URIS.put(modelAdapter.getModelType(), createTableUri(modelAdapter.getTableName()));
+
 			// content://<authority>/<table>
 			URI_MATCHER.addURI(sAuthority, modelAdapter.getTableName().toLowerCase(), tableKey);
 			TYPE_CODES.put(tableKey, modelAdapter.getModelType());
@@ -150,42 +179,113 @@ public abstract class OllieProvider extends ContentProvider {
 		final Long id = Ollie.getDatabase().insert(Ollie.getTableName(type), null, values);
 
 		if (id != null && id > 0) {
-			Uri retUri = createUri(type, id);
-			getContext().getContentResolver().notifyChange(uri, null);
-			return retUri;
+			InvalidationTracker.notifyChanged(type, id);
+			return createUri(type, id);
 		}
 
 		return null;
 	}
 
+	/**
+	 * Inserts all rows in a single transaction, compiling one INSERT statement per distinct set of columns, and
+	 * notifies observers once.
+	 */
+	@Override
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		final Class<? extends Model> type = getModelType(uri);
+		final String tableName = Ollie.getTableName(type);
+		final SQLiteDatabase db = Ollie.getDatabase();
+		final Map<Set<String>, InsertStatement> statements = new HashMap<Set<String>, InsertStatement>();
+		int count = 0;
+
+		Ollie.beginTransaction();
+		try {
+			for (ContentValues rowValues : values) {
+				InsertStatement insert = statements.get(rowValues.keySet());
+				if (insert == null) {
+					final String[] columns = rowValues.keySet().toArray(new String[rowValues.size()]);
+					insert = new InsertStatement(db.compileStatement(createInsertSql(tableName, columns)), columns);
+					statements.put(new HashSet<String>(rowValues.keySet()), insert);
+				}
+
+				final SQLiteStatement statement = insert.mStatement;
+				statement.clearBindings();
+				for (int i = 0; i < insert.mColumns.length; i++) {
+					bindValue(statement, i + 1, rowValues.get(insert.mColumns[i]));
+				}
+
+				try {
+					if (statement.executeInsert() > 0) {
+						count++;
+					}
+				} catch (SQLException e) {
+					Log.e(TAG, "Error inserting into " + tableName, e);
+				}
+			}
+
+			if (count > 0) {
+				InvalidationTracker.notifyChanged(type);
+			}
+			Ollie.setTransactionSuccessful();
+		} finally {
+			Ollie.endTransaction();
+			for (InsertStatement insert : statements.values()) {
+				insert.mStatement.close();
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Applies all operations in a single transaction and notifies observers once per table after it commits. Each
+	 * operation still runs through {@link #insert}, {@link #update} or {@link #delete} individually; statements are
+	 * not compiled once per table as with {@link #bulkInsert}, since operations don't expose their type and values.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+
+		Ollie.beginTransaction();
+		try {
+			final ContentProviderResult[] results = super.applyBatch(operations);
+			Ollie.setTransactionSuccessful();
+			return results;
+		} finally {
+			Ollie.endTransaction();
+		}
+	}
+
 	@Override
 	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		final Class<? extends Model> type = getModelType(uri);
 		final int count = Ollie.getDatabase().update(
-				Ollie.getTableName(getModelType(uri)),
+				Ollie.getTableName(type),
 				values,
 				selection,
 				selectionArgs);
 
-		getContext().getContentResolver().notifyChange(uri, null);
+		InvalidationTracker.notifyChanged(type, getItemId(uri));
 
 		return count;
 	}
 
 	@Override
 	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		final Class<? extends Model> type = getModelType(uri);
 		final int count = Ollie.getDatabase().delete(
-				Ollie.getTableName(getModelType(uri)),
+				Ollie.getTableName(type),
 				selection,
 				selectionArgs);
 
-		getContext().getContentResolver().notifyChange(uri, null);
+		InvalidationTracker.notifyChanged(type, getItemId(uri));
 
 		return count;
 	}
 
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
-		final Cursor cursor = Ollie.getDatabase().query(
+		final Cursor cursor = Ollie.getReadableDatabase().query(
 				Ollie.getTableName(getModelType(uri)),
 				projection,
 				selection,
@@ -223,9 +323,10 @@ public abstract class OllieProvider extends ContentProvider {
 	}
 
 	/**
-	 * Returns the default cache size. Override to provide your own cache size.
+	 * Returns the default cache size. Override to provide your own cache size. The size bounds the cache of each
+	 * model class which does not declare its own size with {@link ollie.annotation.Cache}.
 	 *
-	 * @return The cache size.
+	 * @return The number of entities cached per model class.
 	 */
 	protected int getCacheSize() {
 		return Ollie.DEFAULT_CACHE_SIZE;
@@ -240,6 +341,24 @@ public abstract class OllieProvider extends ContentProvider {
 		return LogLevel.NONE;
 	}
 
+	/**
+	 * Returns false by default. Override to enable write-ahead logging.
+	 *
+	 * @return Whether write-ahead logging is enabled.
+	 */
+	protected boolean isWriteAheadLoggingEnabled() {
+		return false;
+	}
+
+	/**
+	 * Returns the default synchronous mode of DEFAULT. Override to provide your own synchronous mode.
+	 *
+	 * @return The synchronous mode.
+	 */
+	protected SynchronousMode getSynchronousMode() {
+		return SynchronousMode.DEFAULT;
+	}
+
 	private Class<? extends Model> getModelType(Uri uri) {
 		final int code = URI_MATCHER.match(uri);
 		if (code != UriMatcher.NO_MATCH) {
@@ -247,4 +366,60 @@ public abstract class OllieProvider extends ContentProvider {
 		}
 		return null;
 	}
+
+	// Returns the row id of an item Uri, or null for a table Uri.
+	private Long getItemId(Uri uri) {
+		final int code = URI_MATCHER.match(uri);
+		if (code != UriMatcher.NO_MATCH && (code % 2) == 0) {
+			return ContentUris.parseId(uri);
+		}
+		return null;
+	}
+
+	private static Uri createTableUri(String tableName) {
+		return new Uri.Builder()
+				.scheme(ContentResolver.SCHEME_CONTENT)
+				.authority(sAuthority)
+				.appendPath(tableName.toLowerCase())
+				.build();
+	}
+
+	private static String createInsertSql(String tableName, String[] columns) {
+		if (columns.length == 0) {
+			return "INSERT INTO " + tableName + " DEFAULT VALUES";
+		}
+
+		final StringBuilder placeholders = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			placeholders.append(i > 0 ? ", ?" : "?");
+		}
+		return "INSERT INTO " + tableName + " (" + TextUtils.join(", ", columns) + ") VALUES (" + placeholders + ")";
+	}
+
+	private static void bindValue(SQLiteStatement statement, int index, Object value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof Double || value instanceof Float) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			statement.bindLong(index, ((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			statement.bindLong(index, (Boolean) value ? 1 : 0);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
+
+	// A compiled INSERT statement and the columns it binds, in order.
+	private static final class InsertStatement {
+		private final SQLiteStatement mStatement;
+		private final String[] mColumns;
+
+		public InsertStatement(SQLiteStatement statement, String[] columns) {
+			mStatement = statement;
+			mColumns = columns;
+		}
+	}
 }
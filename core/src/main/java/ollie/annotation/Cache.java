@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+/**
+ * <p>
+ * An annotation that configures how loaded entities of a model are cached. Must be used in conjunction with
+ * {@link ollie.annotation.Table}. Each model has its own cache, so a busy table does not evict the entities of
+ * another. Models without this annotation use a least recently used cache of the size passed to Ollie.
+ * </p>
+ */
+@Target(TYPE)
+@Retention(CLASS)
+public @interface Cache {
+	/**
+	 * Controls how entities are held by the cache.
+	 */
+	public enum Policy {
+		/**
+		 * Do not cache entities. Every query creates new instances.
+		 */
+		NONE,
+		/**
+		 * Keep a bounded number of entities, evicting the least recently used.
+		 */
+		LRU,
+		/**
+		 * Keep entities for as long as they are otherwise reachable.
+		 */
+		WEAK,
+		/**
+		 * Keep entities until the garbage collector needs the memory.
+		 */
+		SOFT
+	}
+
+	/**
+	 * Returns the cache policy.
+	 *
+	 * @return The cache policy.
+	 */
+	public Policy value() default Policy.LRU;
+
+	/**
+	 * Returns the maximum number of entities held by an LRU cache. Zero uses the cache size passed to Ollie.
+	 *
+	 * @return The cache size.
+	 */
+	public int size() default 0;
+}
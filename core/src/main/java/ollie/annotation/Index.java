@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+/**
+ * <p>
+ * An annotation that indicates an index should be created for a member's column. Must be used in conjunction with
+ * {@link ollie.annotation.Column}. Indices on several columns are declared with {@link Table#indices()}, in which
+ * case the columns must be specified.
+ * </p>
+ * <p>
+ * <a href="http://www.sqlite.org/lang_createindex.html">http://www.sqlite.org/lang_createindex.html</a>
+ * <a href="http://www.sqlite.org/partialindex.html">http://www.sqlite.org/partialindex.html</a>
+ * </p>
+ */
+@Target(FIELD)
+@Retention(CLASS)
+public @interface Index {
+	/**
+	 * Returns the indexed columns. Must be empty for a member and must not be empty for a table.
+	 *
+	 * @return The column names.
+	 */
+	public String[] value() default {};
+
+	/**
+	 * Returns the index name. Defaults to the table name and the column names joined by underscores.
+	 *
+	 * @return The index name.
+	 */
+	public String name() default "";
+
+	/**
+	 * Returns whether the index should be created using the UNIQUE keyword.
+	 *
+	 * @return True for a unique index.
+	 */
+	public boolean unique() default false;
+
+	/**
+	 * Returns an expression which limits the index to matching rows, creating a partial index. Partial indices
+	 * require SQLite 3.8.0 or later.
+	 *
+	 * @return The expression.
+	 */
+	public String where() default "";
+}
@@ -24,7 +24,8 @@ import static java.lang.annotation.RetentionPolicy.CLASS;
 
 /**
  * <p>
- * An annotation that indicates a class is a table. Requires the table name to be specified.
+ * An annotation that indicates a class is a table. Requires the table name to be specified. Indices may be declared
+ * with {@link ollie.annotation.Index}.
  * </p>
  * <p>
  * <a href="http://www.sqlite.org/lang_createtable.html">http://www.sqlite.org/lang_createtable.html</a>
@@ -39,4 +40,11 @@ public @interface Table {
 	 * @return The table name.
 	 */
 	public String value();
+
+	/**
+	 * Returns the indices on one or more columns of the table.
+	 *
+	 * @return The indices.
+	 */
+	public Index[] indices() default {};
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.internal;
+
+import java.util.Arrays;
+
+/**
+ * Used internally to cache entities by id. A bounded, least recently used cache keyed by primitive longs, so lookups
+ * do not allocate. Keys are stored in an open addressing table with linear probing which indexes into dense entry
+ * arrays linked in access order.
+ *
+ * @param <V> The value type.
+ */
+public final class LongLruCache<V> implements LongCache<V> {
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int NONE = -1;
+
+	private final int mMaxSize;
+	private int mSize;
+
+	// Table slots hold an entry index plus one, or zero when empty.
+	private int[] mTable;
+
+	private long[] mKeys;
+	private Object[] mValues;
+	private int[] mPrevious;
+	private int[] mNext;
+	private int mEntryCount;
+	private int mFree = NONE;
+
+	// Least and most recently used entries.
+	private int mHead = NONE;
+	private int mTail = NONE;
+
+	public LongLruCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		mMaxSize = maxSize;
+		allocate(Math.min(INITIAL_CAPACITY, maxSize));
+	}
+
+	/**
+	 * Returns the value for the key and marks it as most recently used.
+	 *
+	 * @param key The key.
+	 * @return The value, or null if it is not cached.
+	 */
+	@Override
+	public synchronized V get(long key) {
+		final int slot = findSlot(key);
+		if (slot == NONE) {
+			return null;
+		}
+
+		final int entry = mTable[slot] - 1;
+		moveToTail(entry);
+		return (V) mValues[entry];
+	}
+
+	/**
+	 * Caches the value for the key, evicting the least recently used value if the cache is full.
+	 *
+	 * @param key   The key.
+	 * @param value The value.
+	 * @return The previous value for the key, or null.
+	 */
+	@Override
+	public synchronized V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value == null");
+		}
+
+		final int slot = findSlot(key);
+		if (slot != NONE) {
+			final int entry = mTable[slot] - 1;
+			final V previous = (V) mValues[entry];
+			mValues[entry] = value;
+			moveToTail(entry);
+			return previous;
+		}
+
+		if (mSize >= mMaxSize) {
+			removeSlot(findSlot(mKeys[mHead]));
+		}
+
+		int entry;
+		if (mFree != NONE) {
+			entry = mFree;
+			mFree = mNext[entry];
+		} else {
+			if (mEntryCount == mKeys.length) {
+				allocate(Math.min(mKeys.length * 2, mMaxSize));
+			}
+			entry = mEntryCount++;
+		}
+
+		mKeys[entry] = key;
+		mValues[entry] = value;
+		linkLast(entry);
+		insertSlot(entry);
+		mSize++;
+
+		return null;
+	}
+
+	/**
+	 * Removes the value for the key.
+	 *
+	 * @param key The key.
+	 * @return The removed value, or null.
+	 */
+	@Override
+	public synchronized V remove(long key) {
+		final int slot = findSlot(key);
+		if (slot == NONE) {
+			return null;
+		}
+		return removeSlot(slot);
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	@Override
+	public synchronized void evictAll() {
+		Arrays.fill(mTable, 0);
+		Arrays.fill(mValues, null);
+		mSize = 0;
+		mEntryCount = 0;
+		mFree = NONE;
+		mHead = NONE;
+		mTail = NONE;
+	}
+
+	public synchronized int size() {
+		return mSize;
+	}
+
+	public int maxSize() {
+		return mMaxSize;
+	}
+
+	// Table
+
+	private static int hash(long key) {
+		int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int findSlot(long key) {
+		final int mask = mTable.length - 1;
+		int slot = hash(key) & mask;
+		int entry;
+		while ((entry = mTable[slot]) != 0) {
+			if (mKeys[entry - 1] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NONE;
+	}
+
+	private void insertSlot(int entry) {
+		final int mask = mTable.length - 1;
+		int slot = hash(mKeys[entry]) & mask;
+		while (mTable[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		mTable[slot] = entry + 1;
+	}
+
+	private V removeSlot(int slot) {
+		final int entry = mTable[slot] - 1;
+		final V value = (V) mValues[entry];
+
+		// Shift following entries of the probe sequence back so lookups never stop at the hole.
+		final int mask = mTable.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		int nextEntry;
+		while ((nextEntry = mTable[next]) != 0) {
+			final int ideal = hash(mKeys[nextEntry - 1]) & mask;
+			if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+				mTable[hole] = nextEntry;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		mTable[hole] = 0;
+
+		unlink(entry);
+		mValues[entry] = null;
+		mNext[entry] = mFree;
+		mFree = entry;
+		mSize--;
+
+		return value;
+	}
+
+	private void allocate(int capacity) {
+		if (mKeys == null) {
+			mKeys = new long[capacity];
+			mValues = new Object[capacity];
+			mPrevious = new int[capacity];
+			mNext = new int[capacity];
+		} else {
+			mKeys = Arrays.copyOf(mKeys, capacity);
+			mValues = Arrays.copyOf(mValues, capacity);
+			mPrevious = Arrays.copyOf(mPrevious, capacity);
+			mNext = Arrays.copyOf(mNext, capacity);
+		}
+
+		// Keep the table at most half full.
+		int tableSize = 1;
+		while (tableSize < capacity * 2) {
+			tableSize <<= 1;
+		}
+		mTable = new int[tableSize];
+		for (int entry = mHead; entry != NONE; entry = mNext[entry]) {
+			insertSlot(entry);
+		}
+	}
+
+	// Access order
+
+	private void moveToTail(int entry) {
+		if (entry != mTail) {
+			unlink(entry);
+			linkLast(entry);
+		}
+	}
+
+	private void linkLast(int entry) {
+		mPrevious[entry] = mTail;
+		mNext[entry] = NONE;
+		if (mTail != NONE) {
+			mNext[mTail] = entry;
+		} else {
+			mHead = entry;
+		}
+		mTail = entry;
+	}
+
+	private void unlink(int entry) {
+		final int previous = mPrevious[entry];
+		final int next = mNext[entry];
+		if (previous != NONE) {
+			mNext[previous] = next;
+		} else {
+			mHead = next;
+		}
+		if (next != NONE) {
+			mPrevious[next] = previous;
+		} else {
+			mTail = previous;
+		}
+	}
+}
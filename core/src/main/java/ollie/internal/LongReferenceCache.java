@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * Used internally to cache entities by id. An unbounded cache which holds values through weak or soft references.
+ * Entries whose values have been collected are purged on the next access.
+ *
+ * @param <V> The value type.
+ */
+public final class LongReferenceCache<V> implements LongCache<V> {
+	private final LongLruCache<Reference<V>> mReferences = new LongLruCache<Reference<V>>(Integer.MAX_VALUE);
+	private final ReferenceQueue<V> mQueue = new ReferenceQueue<V>();
+	private final boolean mSoft;
+
+	/**
+	 * @param soft Whether to hold values through soft references instead of weak references.
+	 */
+	public LongReferenceCache(boolean soft) {
+		mSoft = soft;
+	}
+
+	@Override
+	public synchronized V get(long key) {
+		purge();
+		return dereference(mReferences.get(key));
+	}
+
+	@Override
+	public synchronized V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value == null");
+		}
+
+		purge();
+		final Reference<V> reference = mSoft
+				? new SoftEntry<V>(key, value, mQueue)
+				: new WeakEntry<V>(key, value, mQueue);
+
+		return dereference(mReferences.put(key, reference));
+	}
+
+	@Override
+	public synchronized V remove(long key) {
+		purge();
+		return dereference(mReferences.remove(key));
+	}
+
+	@Override
+	public synchronized void evictAll() {
+		mReferences.evictAll();
+		while (mQueue.poll() != null) {
+		}
+	}
+
+	private void purge() {
+		Reference<? extends V> reference;
+		while ((reference = mQueue.poll()) != null) {
+			final long key = ((Entry) reference).getKey();
+			// The key may have been mapped to a new value since this reference was queued.
+			if (mReferences.get(key) == reference) {
+				mReferences.remove(key);
+			}
+		}
+	}
+
+	private V dereference(Reference<V> reference) {
+		return reference != null ? reference.get() : null;
+	}
+
+	private interface Entry {
+		public long getKey();
+	}
+
+	private static final class WeakEntry<V> extends WeakReference<V> implements Entry {
+		private final long mKey;
+
+		public WeakEntry(long key, V value, ReferenceQueue<V> queue) {
+			super(value, queue);
+			mKey = key;
+		}
+
+		@Override
+		public long getKey() {
+			return mKey;
+		}
+	}
+
+	private static final class SoftEntry<V> extends SoftReference<V> implements Entry {
+		private final long mKey;
+
+		public SoftEntry(long key, V value, ReferenceQueue<V> queue) {
+			super(value, queue);
+			mKey = key;
+		}
+
+		@Override
+		public long getKey() {
+			return mKey;
+		}
+	}
+}
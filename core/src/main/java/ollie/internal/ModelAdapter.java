@@ -16,35 +16,420 @@
 
 package ollie.internal;
 
-import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.provider.BaseColumns;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 import ollie.Model;
+import ollie.annotation.Cache;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Used internally to perform database operations on a model.
  */
 public abstract class ModelAdapter<T extends Model> {
+	private static final String TAG = "Ollie";
+
+	private static final String[] NO_INDEX_SCHEMAS = new String[0];
+
+	protected static final long ALL_COLUMNS = -1L;
+
+	private static final int MAX_IDLE_STATEMENTS = 16;
+
+	private static final int MAX_PARTIAL_UPDATE_SQL = 16;
+
+	private String[] mColumnNames;
+	private String mUpsertSql;
+	private String mInsertOrIgnoreSql;
+	private String mUpsertIdSql;
+
+	// Each save and upsert acquires statements of its own, since execution waits for the database connection and a
+	// lock held meanwhile would deadlock against a thread which owns the connection for a transaction.
+	private final StatementCache mStatements = new StatementCache(MAX_IDLE_STATEMENTS);
+
+	// The SQL of UPDATE statements which write only some columns, keyed by the bitset of columns they write.
+	private final Map<Long, String> mPartialUpdateSql =
+			new LinkedHashMap<Long, String>(MAX_PARTIAL_UPDATE_SQL, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+					return size() > MAX_PARTIAL_UPDATE_SQL;
+				}
+			};
+
 	public abstract Class<? extends Model> getModelType();
 
 	public abstract String getTableName();
 
 	public abstract String getSchema();
 
-	public abstract void load(T entity, Cursor cursor);
+	/**
+	 * Returns the CREATE INDEX statements for the indices declared with {@link ollie.annotation.Index}.
+	 *
+	 * @return The index definitions.
+	 */
+	public String[] getIndexSchemas() {
+		return NO_INDEX_SCHEMAS;
+	}
+
+	/**
+	 * Returns the cache policy declared with {@link Cache}. Models without the annotation use an LRU cache.
+	 *
+	 * @return The cache policy.
+	 */
+	public Cache.Policy getCachePolicy() {
+		return Cache.Policy.LRU;
+	}
+
+	/**
+	 * Returns the LRU cache size declared with {@link Cache}, or zero to use the cache size passed to Ollie.
+	 *
+	 * @return The cache size.
+	 */
+	public int getCacheSize() {
+		return 0;
+	}
+
+	/**
+	 * Returns the model type referenced by a Model-typed column.
+	 *
+	 * @param columnName The column name.
+	 * @return The referenced model type, or null if the column does not reference a model.
+	 */
+	public Class<? extends Model> getReferenceType(String columnName) {
+		return null;
+	}
+
+	/**
+	 * Returns the {@link ollie.annotation.Unique} column used to match existing rows when upserting.
+	 *
+	 * @return The column name, or null if the model has no unique column.
+	 */
+	public String getUpsertKey() {
+		return null;
+	}
+
+	/**
+	 * Binds the entity's {@link #getUpsertKey() upsert key} value.
+	 *
+	 * @param entity    The entity.
+	 * @param statement The statement.
+	 * @param index     The argument index.
+	 * @return False if the entity has no upsert key value, in which case nothing is bound.
+	 */
+	public boolean bindUpsertKey(T entity, SQLiteStatement statement, int index) {
+		return false;
+	}
+
+	public abstract String getInsertSql();
+
+	public abstract String getUpdateSql();
+
+	/**
+	 * Returns the mapped column names, in the order the columns are bound by {@link #bind(Model, SQLiteStatement,
+	 * long, int)}.
+	 *
+	 * @return The column names.
+	 */
+	public abstract String[] getColumnNames();
+
+	/**
+	 * Resolves the cursor column index of each mapped column. Resolve once per cursor and pass the result to
+	 * {@link #load(Model, Cursor, int[])} for every row.
+	 *
+	 * @param cursor The cursor.
+	 * @return The column indices, or -1 for columns which are not in the cursor.
+	 */
+	public abstract int[] getColumnIndices(Cursor cursor);
 
-	public abstract Long save(T entity, SQLiteDatabase db);
+	/**
+	 * Loads the entity from the cursor and records the loaded values for {@link #getChangedColumns(Model)}.
+	 *
+	 * @param entity  The entity.
+	 * @param cursor  The cursor.
+	 * @param indices The column indices returned by {@link #getColumnIndices(Cursor)}.
+	 */
+	public abstract void load(T entity, Cursor cursor, int[] indices);
+
+	/**
+	 * Binds the serialized values of the given columns to consecutive statement arguments.
+	 *
+	 * @param entity    The entity.
+	 * @param statement The statement.
+	 * @param columns   The bitset of column positions to bind, or {@link #ALL_COLUMNS}.
+	 * @param index     The index of the argument before the first one to bind.
+	 * @return The index of the last bound argument.
+	 */
+	public abstract int bind(T entity, SQLiteStatement statement, long columns, int index);
 
 	public abstract void delete(T entity, SQLiteDatabase db);
 
-	protected final Long insertOrUpdate(T entity, SQLiteDatabase db, ContentValues values) {
+	/**
+	 * Returns a bitset of the column positions whose values differ from those recorded by the last load or
+	 * {@link #takeSnapshot(Model)}. Models which do not track their values always report every column.
+	 *
+	 * @param entity The entity.
+	 * @return The changed columns, or {@link #ALL_COLUMNS} if the entity must be written in full.
+	 */
+	public long getChangedColumns(T entity) {
+		return ALL_COLUMNS;
+	}
+
+	/**
+	 * Records the entity's current values for {@link #getChangedColumns(Model)}, after it has been written.
+	 *
+	 * @param entity The entity.
+	 */
+	public void takeSnapshot(T entity) {
+	}
+
+	public final void load(T entity, Cursor cursor) {
+		load(entity, cursor, getColumnIndices(cursor));
+	}
+
+	public final Long save(T entity, SQLiteDatabase db) {
+		return save(entity, db, getChangedColumns(entity));
+	}
+
+	/**
+	 * Inserts the entity if it has no id, otherwise updates the given columns.
+	 *
+	 * @param entity         The entity.
+	 * @param db             The database.
+	 * @param changedColumns The columns returned by {@link #getChangedColumns(Model)}.
+	 * @return The entity id.
+	 */
+	public final Long save(T entity, SQLiteDatabase db, long changedColumns) {
+		final long columns = entity.id == null ? ALL_COLUMNS : changedColumns;
+		if (columns == 0) {
+			return entity.id;
+		}
+
+		final String sql = entity.id == null ? getInsertSql() : getUpdateSql(columns);
+		final SQLiteStatement statement = mStatements.acquire(db, sql);
+		try {
+			return insertOrUpdate(entity, statement, bind(entity, statement, columns, 0) + 1);
+		} finally {
+			mStatements.release(db, sql, statement);
+		}
+	}
+
+	/**
+	 * Inserts the entity, or updates the row with the same {@link #getUpsertKey() upsert key} if there is one. Uses
+	 * INSERT ... ON CONFLICT DO UPDATE ... RETURNING where SQLite supports it. Otherwise the entity is inserted with
+	 * INSERT OR IGNORE, and if no row was inserted the row with the key is updated. Entities which already have an
+	 * id, or have no upsert key, are saved normally. Only a conflict on the upsert key is resolved; other constraint
+	 * violations fail the upsert. Callers should run the upsert in a transaction.
+	 *
+	 * @param entity The entity.
+	 * @param db     The database.
+	 * @return The entity id, or -1 if the entity could not be written.
+	 */
+	public final Long upsert(T entity, SQLiteDatabase db) {
+		if (entity.id != null || getUpsertKey() == null) {
+			return save(entity, db, ALL_COLUMNS);
+		}
+
+		if (SQLiteVersion.supportsReturning(db)) {
+			final String sql = getUpsertSql();
+			final SQLiteStatement statement = mStatements.acquire(db, sql);
+			try {
+				bind(entity, statement, ALL_COLUMNS, 0);
+				entity.id = statement.simpleQueryForLong();
+			} catch (SQLException e) {
+				Log.e(TAG, "Error upserting into " + getTableName(), e);
+				return -1L;
+			} finally {
+				mStatements.release(db, sql, statement);
+			}
+			return entity.id;
+		}
+
+		final String insertSql = getInsertOrIgnoreSql();
+		final SQLiteStatement insert = mStatements.acquire(db, insertSql);
+		final long insertedId;
+		try {
+			bind(entity, insert, ALL_COLUMNS, 0);
+			insertedId = insert.executeInsert();
+		} catch (SQLException e) {
+			Log.e(TAG, "Error upserting into " + getTableName(), e);
+			return -1L;
+		} finally {
+			mStatements.release(db, insertSql, insert);
+		}
+		if (insertedId != -1) {
+			entity.id = insertedId;
+			return entity.id;
+		}
+
+		// The insert was ignored. If that was not for a row with the same key, another constraint failed.
+		final String idSql = getUpsertIdSql();
+		final SQLiteStatement query = mStatements.acquire(db, idSql);
+		final long id;
+		try {
+			if (!bindUpsertKey(entity, query, 1)) {
+				Log.e(TAG, "Error upserting into " + getTableName() + ": constraint failed");
+				return -1L;
+			}
+			id = query.simpleQueryForLong();
+		} catch (SQLiteDoneException e) {
+			Log.e(TAG, "Error upserting into " + getTableName() + ": constraint failed");
+			return -1L;
+		} finally {
+			mStatements.release(db, idSql, query);
+		}
+
+		// Updating by id reports any constraint the new values violate.
+		entity.id = id;
+		return save(entity, db, ALL_COLUMNS);
+	}
+
+	/**
+	 * Executes a bound INSERT or UPDATE statement for the entity. Mirrors SQLiteDatabase.insert() by logging insert
+	 * failures and returning -1.
+	 *
+	 * @param entity    The entity.
+	 * @param statement The bound statement.
+	 * @param idIndex   The index of the WHERE argument in the UPDATE statement.
+	 * @return The entity id.
+	 */
+	protected final Long insertOrUpdate(T entity, SQLiteStatement statement, int idIndex) {
 		if (entity.id == null) {
-			entity.id = db.insert(getTableName(), null, values);
+			try {
+				entity.id = statement.executeInsert();
+			} catch (SQLException e) {
+				Log.e(TAG, "Error inserting into " + getTableName(), e);
+				entity.id = -1L;
+			}
 		} else {
-			db.update(getTableName(), values, BaseColumns._ID + "=?", new String[]{entity.id.toString()});
+			statement.bindLong(idIndex, entity.id);
+			statement.execute();
 		}
 
 		return entity.id;
 	}
-}
\ No newline at end of file
+
+	protected static boolean isChanged(long changedColumns, int position) {
+		return changedColumns == ALL_COLUMNS || (changedColumns & (1L << position)) != 0;
+	}
+
+	protected static boolean equal(Object a, Object b) {
+		if (a instanceof byte[] && b instanceof byte[]) {
+			return Arrays.equals((byte[]) a, (byte[]) b);
+		}
+		return a == null ? b == null : a.equals(b);
+	}
+
+	protected static void bindLong(SQLiteStatement statement, int index, Number value) {
+		if (value != null) {
+			statement.bindLong(index, value.longValue());
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	protected static void bindDouble(SQLiteStatement statement, int index, Number value) {
+		if (value != null) {
+			statement.bindDouble(index, value.doubleValue());
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	protected static void bindString(SQLiteStatement statement, int index, String value) {
+		if (value != null) {
+			statement.bindString(index, value);
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	protected static void bindBlob(SQLiteStatement statement, int index, byte[] value) {
+		if (value != null) {
+			statement.bindBlob(index, value);
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	private String getUpsertSql() {
+		if (mUpsertSql == null) {
+			mUpsertSql = getInsertSql() + " ON CONFLICT(" + getUpsertKey() + ") DO " + createUpsertAssignments()
+					+ " RETURNING " + Model._ID;
+		}
+		return mUpsertSql;
+	}
+
+	private String getInsertOrIgnoreSql() {
+		if (mInsertOrIgnoreSql == null) {
+			mInsertOrIgnoreSql = getInsertSql().replaceFirst("^INSERT ", "INSERT OR IGNORE ");
+		}
+		return mInsertOrIgnoreSql;
+	}
+
+	private String getUpsertIdSql() {
+		if (mUpsertIdSql == null) {
+			mUpsertIdSql = "SELECT " + Model._ID + " FROM " + getTableName() + " WHERE " + getUpsertKey() + "=?";
+		}
+		return mUpsertIdSql;
+	}
+
+	private boolean isAllColumns(long columns) {
+		final int columnCount = getCachedColumnNames().length;
+		return columns == ALL_COLUMNS || columnCount < Long.SIZE && columns == (1L << columnCount) - 1;
+	}
+
+	private synchronized String getUpdateSql(long changedColumns) {
+		if (isAllColumns(changedColumns)) {
+			return getUpdateSql();
+		}
+
+		String sql = mPartialUpdateSql.get(changedColumns);
+		if (sql == null) {
+			sql = createUpdateSql(changedColumns);
+			mPartialUpdateSql.put(changedColumns, sql);
+		}
+		return sql;
+	}
+
+	private String[] getCachedColumnNames() {
+		if (mColumnNames == null) {
+			mColumnNames = getColumnNames();
+		}
+		return mColumnNames;
+	}
+
+	private String createUpsertAssignments() {
+		final StringBuilder assignments = new StringBuilder();
+		for (String columnName : getCachedColumnNames()) {
+			if (!columnName.equals(getUpsertKey()) && !columnName.equals(Model._ID)) {
+				assignments.append(assignments.length() > 0 ? ", " : "UPDATE SET ");
+				assignments.append(columnName).append("=excluded.").append(columnName);
+			}
+		}
+		// DO NOTHING would return no row, so the key is assigned to itself.
+		return assignments.length() > 0 ? assignments.toString()
+				: "UPDATE SET " + getUpsertKey() + "=excluded." + getUpsertKey();
+	}
+
+	private String createUpdateSql(long changedColumns) {
+		final String[] columnNames = getCachedColumnNames();
+
+		final StringBuilder sql = new StringBuilder("UPDATE ").append(getTableName()).append(" SET ");
+		boolean first = true;
+		for (int i = 0; i < columnNames.length; i++) {
+			if (isChanged(changedColumns, i)) {
+				if (!first) {
+					sql.append(", ");
+				}
+				sql.append(columnNames[i]).append("=?");
+				first = false;
+			}
+		}
+		return sql.append(" WHERE ").append(Model._ID).append("=?").toString();
+	}
+}
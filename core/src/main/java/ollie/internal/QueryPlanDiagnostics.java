@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.internal;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Used internally to run EXPLAIN QUERY PLAN once for each distinct SQL statement while diagnostics are enabled. Plan
+ * steps which scan a whole table or build a temporary b-tree are logged along with the statement and the first
+ * calling method outside of Ollie.
+ */
+public final class QueryPlanDiagnostics {
+	private static final String TAG = "Ollie";
+	private static final int MAX_SIZE = 256;
+
+	private static final String[] EXPLAINED_STATEMENTS = new String[]{"SELECT", "INSERT", "UPDATE", "DELETE",
+			"REPLACE", "WITH"};
+	private static final String[] LIBRARY_PACKAGES = new String[]{"ollie", "ollie.internal", "ollie.query",
+			"ollie.util"};
+	private static final String[] PLATFORM_PACKAGE_PREFIXES = new String[]{"android.", "com.android.", "dalvik.",
+			"java.", "rx."};
+
+	// The flagged plan steps keyed by SQL, in least recently used order.
+	private static final Map<String, List<String>> sPlans = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private static volatile boolean sEnabled = false;
+
+	private QueryPlanDiagnostics() {
+	}
+
+	public static boolean isEnabled() {
+		return sEnabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		sEnabled = enabled;
+		if (!enabled) {
+			synchronized (sPlans) {
+				sPlans.clear();
+			}
+		}
+	}
+
+	/**
+	 * Explains the statement if diagnostics are enabled and it has not been explained yet, and logs any plan steps
+	 * which scan a whole table or use a temporary b-tree.
+	 *
+	 * @param db   The database.
+	 * @param sql  The statement.
+	 * @param args The statement arguments.
+	 */
+	public static void explain(SQLiteDatabase db, String sql, String[] args) {
+		if (!sEnabled || !isExplainable(sql)) {
+			return;
+		}
+		synchronized (sPlans) {
+			if (sPlans.containsKey(sql)) {
+				return;
+			}
+		}
+
+		final List<String> flaggedSteps = new ArrayList<String>();
+		try {
+			final Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+			try {
+				// The detail is the last column in every version of SQLite.
+				final int detailIndex = cursor.getColumnCount() - 1;
+				while (cursor.moveToNext()) {
+					final String detail = cursor.getString(detailIndex);
+					if (isFlagged(detail)) {
+						flaggedSteps.add(detail);
+					}
+				}
+			} finally {
+				cursor.close();
+			}
+		} catch (SQLiteException e) {
+			Log.w(TAG, "Could not explain query: " + sql, e);
+		}
+
+		synchronized (sPlans) {
+			if (sPlans.put(sql, Collections.unmodifiableList(flaggedSteps)) != null) {
+				// Another thread explained the statement first.
+				return;
+			}
+		}
+
+		if (!flaggedSteps.isEmpty()) {
+			Log.w(TAG, "Query plan: " + TextUtils.join("; ", flaggedSteps) + "\n\tQuery: " + sql
+					+ "\n\tCalled from: " + getCallSite());
+		}
+	}
+
+	/**
+	 * Returns the flagged steps of a statement's query plan.
+	 *
+	 * @param sql The statement.
+	 * @return The plan steps which scan a whole table or use a temporary b-tree, or null if the statement has not
+	 * been explained.
+	 */
+	public static List<String> getFlaggedSteps(String sql) {
+		synchronized (sPlans) {
+			return sPlans.get(sql);
+		}
+	}
+
+	private static boolean isExplainable(String sql) {
+		final String statement = sql.trim().toUpperCase(Locale.US);
+		for (String keyword : EXPLAINED_STATEMENTS) {
+			if (statement.startsWith(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Older versions of SQLite report "SCAN TABLE t", newer versions "SCAN t". Scans of an index or of a constant
+	// row or subquery are not flagged.
+	private static boolean isFlagged(String detail) {
+		if (detail == null) {
+			return false;
+		}
+		if (detail.contains("USE TEMP B-TREE")) {
+			return true;
+		}
+		return detail.startsWith("SCAN ")
+				&& !detail.contains(" INDEX")
+				&& !detail.startsWith("SCAN CONSTANT ROW")
+				&& !detail.startsWith("SCAN SUBQUERY");
+	}
+
+	private static String getCallSite() {
+		for (StackTraceElement element : new Throwable().getStackTrace()) {
+			if (!isLibraryClass(element.getClassName())) {
+				return element.toString();
+			}
+		}
+		return "unknown";
+	}
+
+	private static boolean isLibraryClass(String className) {
+		final int lastDot = className.lastIndexOf('.');
+		final String packageName = lastDot >= 0 ? className.substring(0, lastDot) : "";
+		for (String libraryPackage : LIBRARY_PACKAGES) {
+			if (libraryPackage.equals(packageName)) {
+				return true;
+			}
+		}
+		for (String prefix : PLATFORM_PACKAGE_PREFIXES) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.internal;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Used internally to check for SQL features which depend on the version of the SQLite library. The version is read
+ * once, since every database of the process uses the same library.
+ */
+public final class SQLiteVersion {
+	// Multi-row VALUES were added in SQLite 3.7.11.
+	private static final int[] MULTI_ROW_VALUES_VERSION = new int[]{3, 7, 11};
+	// INSERT ... ON CONFLICT DO UPDATE was added in SQLite 3.24.0.
+	private static final int[] UPSERT_VERSION = new int[]{3, 24, 0};
+	// RETURNING was added in SQLite 3.35.0.
+	private static final int[] RETURNING_VERSION = new int[]{3, 35, 0};
+
+	private static volatile int[] sVersion;
+
+	private SQLiteVersion() {
+	}
+
+	public static boolean supportsMultiRowValues(SQLiteDatabase db) {
+		return isAtLeast(db, MULTI_ROW_VALUES_VERSION);
+	}
+
+	public static boolean supportsUpsert(SQLiteDatabase db) {
+		return isAtLeast(db, UPSERT_VERSION);
+	}
+
+	public static boolean supportsReturning(SQLiteDatabase db) {
+		return isAtLeast(db, RETURNING_VERSION);
+	}
+
+	private static boolean isAtLeast(SQLiteDatabase db, int[] minVersion) {
+		if (sVersion == null) {
+			sVersion = parseVersion(DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null));
+		}
+
+		for (int i = 0; i < minVersion.length; i++) {
+			if (sVersion[i] != minVersion[i]) {
+				return sVersion[i] > minVersion[i];
+			}
+		}
+		return true;
+	}
+
+	private static int[] parseVersion(String version) {
+		final String[] parts = version.split("\\.");
+		final int[] parsed = new int[3];
+		for (int i = 0; i < parsed.length && i < parts.length; i++) {
+			parsed[i] = Integer.parseInt(parts[i]);
+		}
+		return parsed;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.internal;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Used internally to share compiled statements between threads. A statement is acquired for the exclusive use of one
+ * caller and released afterwards, and idle statements are kept in a bounded, least recently used pool keyed by SQL.
+ * No lock is held while a statement is compiled or executed, since both wait for a database connection which another
+ * thread may hold for the length of a transaction. The pool is cleared when the database instance changes.
+ */
+public final class StatementCache {
+	private final int mMaxSize;
+	private final Map<String, List<SQLiteStatement>> mIdleStatements =
+			new LinkedHashMap<String, List<SQLiteStatement>>(16, 0.75f, true);
+	private int mIdleCount;
+	private SQLiteDatabase mDatabase;
+
+	public StatementCache(int maxSize) {
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * Runs the query and returns the first column of the first row as a long.
+	 *
+	 * @return The value, or 0 if there are no rows or the value is NULL.
+	 */
+	public long simpleQueryForLong(SQLiteDatabase db, String sql, String[] args) {
+		final SQLiteStatement statement = acquire(db, sql);
+		try {
+			bindArgs(statement, args);
+			return statement.simpleQueryForLong();
+		} catch (SQLiteDoneException e) {
+			return 0;
+		} finally {
+			release(db, sql, statement);
+		}
+	}
+
+	/**
+	 * Runs the query and returns the first column of the first row as a string.
+	 *
+	 * @return The value, or null if there are no rows or the value is NULL.
+	 */
+	public String simpleQueryForString(SQLiteDatabase db, String sql, String[] args) {
+		final SQLiteStatement statement = acquire(db, sql);
+		try {
+			bindArgs(statement, args);
+			return statement.simpleQueryForString();
+		} catch (SQLiteDoneException e) {
+			return null;
+		} finally {
+			release(db, sql, statement);
+		}
+	}
+
+	/**
+	 * Returns an idle statement compiled from the SQL, or compiles a new one. The statement must be passed to
+	 * {@link #release(SQLiteDatabase, String, SQLiteStatement)} once it has been executed.
+	 *
+	 * @param db  The database.
+	 * @param sql The SQL.
+	 * @return The statement.
+	 */
+	public SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+		synchronized (this) {
+			checkDatabase(db);
+			final List<SQLiteStatement> statements = mIdleStatements.get(sql);
+			if (statements != null && !statements.isEmpty()) {
+				mIdleCount--;
+				return statements.remove(statements.size() - 1);
+			}
+		}
+		return db.compileStatement(sql);
+	}
+
+	/**
+	 * Returns an acquired statement to the pool. Statements of a previous database instance, and idle statements
+	 * evicted to keep the pool within its size, are closed.
+	 *
+	 * @param db        The database the statement was acquired for.
+	 * @param sql       The SQL the statement was acquired for.
+	 * @param statement The statement.
+	 */
+	public synchronized void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+		if (db != mDatabase) {
+			statement.close();
+			return;
+		}
+
+		statement.clearBindings();
+		List<SQLiteStatement> statements = mIdleStatements.get(sql);
+		if (statements == null) {
+			statements = new ArrayList<SQLiteStatement>(1);
+			mIdleStatements.put(sql, statements);
+		}
+		statements.add(statement);
+		mIdleCount++;
+		trimToSize(mMaxSize);
+	}
+
+	public synchronized void evictAll() {
+		trimToSize(0);
+	}
+
+	private void checkDatabase(SQLiteDatabase db) {
+		if (mDatabase != db) {
+			trimToSize(0);
+			mDatabase = db;
+		}
+	}
+
+	private void trimToSize(int maxSize) {
+		final Iterator<List<SQLiteStatement>> iterator = mIdleStatements.values().iterator();
+		while (mIdleCount > maxSize && iterator.hasNext()) {
+			final List<SQLiteStatement> statements = iterator.next();
+			while (mIdleCount > maxSize && !statements.isEmpty()) {
+				statements.remove(statements.size() - 1).close();
+				mIdleCount--;
+			}
+			if (statements.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static void bindArgs(SQLiteStatement statement, String[] args) {
+		statement.clearBindings();
+		if (args != null) {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i] != null) {
+					statement.bindString(i + 1, args[i]);
+				} else {
+					statement.bindNull(i + 1);
+				}
+			}
+		}
+	}
+}
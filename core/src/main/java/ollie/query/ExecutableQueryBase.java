@@ -16,6 +16,7 @@
 
 package ollie.query;
 
+import ollie.InvalidationTracker;
 import ollie.Model;
 import ollie.util.QueryUtils;
 
@@ -27,5 +28,6 @@ public abstract class ExecutableQueryBase<T extends Model> extends QueryBase<T>
 	@Override
 	public void execute() {
 		QueryUtils.execSQL(getSql(), getArgs());
+		InvalidationTracker.notifyChanged(mTable);
 	}
 }
@@ -16,21 +16,48 @@
 
 package ollie.query;
 
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
+import ollie.InvalidationTracker;
 import ollie.Model;
 import ollie.Ollie;
+import ollie.annotation.ConflictClause;
+import ollie.internal.SQLiteVersion;
+import ollie.util.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class Insert extends QueryBase {
-	private Insert() {
+	private ConflictClause mConflictClause;
+
+	private Insert(ConflictClause conflictClause) {
 		super(null, null);
+		mConflictClause = conflictClause;
 	}
 
 	public static <T extends Model> Into<T> into(Class<T> table) {
-		return new Into<T>(new Insert(), table);
+		return into(table, ConflictClause.NONE);
+	}
+
+	/**
+	 * Starts an INSERT OR &lt;conflict clause&gt; statement, e.g. INSERT OR REPLACE to overwrite rows which violate
+	 * a UNIQUE constraint.
+	 *
+	 * @param table          The model class.
+	 * @param conflictClause The conflict resolution algorithm.
+	 * @return The INTO clause.
+	 */
+	public static <T extends Model> Into<T> into(Class<T> table, ConflictClause conflictClause) {
+		return new Into<T>(new Insert(conflictClause), table);
 	}
 
 	@Override
 	public String getPartSql() {
+		if (mConflictClause != null && mConflictClause != ConflictClause.NONE) {
+			return "INSERT OR " + mConflictClause.keyword();
+		}
 		return "INSERT";
 	}
 
@@ -82,30 +109,185 @@ public final class Insert extends QueryBase {
 	}
 
 	public static final class Values<T extends Model> extends ExecutableQueryBase<T> {
-		private Object[] mValuesArgs;
+		// Multi-row VALUES are compiled as a compound SELECT, limited to SQLITE_MAX_COMPOUND_SELECT terms.
+		private static final int MAX_ROWS = 500;
+
+		private List<Object[]> mRows = new ArrayList<Object[]>();
 
 		private Values(Query parent, Class<T> table, Object[] args) {
 			super(parent, table);
-			mValuesArgs = args;
+			mRows.add(args);
+		}
+
+		/**
+		 * Adds another row to the statement. Rows are inserted with a single multi-row INSERT, split into as few
+		 * statements as SQLite's bound argument and compound SELECT limits allow and run in one transaction. SQLite
+		 * versions before 3.7.11 do not support multi-row VALUES, so there the rows are inserted one at a time with
+		 * a single compiled statement, in one transaction.
+		 *
+		 * @param args The row values.
+		 * @return This VALUES clause.
+		 */
+		public Values<T> values(Object... args) {
+			if (mRows.get(0).length != args.length) {
+				throw new MalformedQueryException("Number of values does not match the previous rows.");
+			}
+			mRows.add(args);
+			return this;
+		}
+
+		/**
+		 * Updates the existing row instead when the insert violates the UNIQUE constraint on the given columns. All
+		 * other inserted columns are set to the inserted values. Requires SQLite 3.24.0 or later, which ships with
+		 * Android 11 (API 30); executing the statement throws {@link UnsupportedOperationException} with older
+		 * versions.
+		 *
+		 * @param columns The columns of the UNIQUE constraint.
+		 * @return The upsert clause.
+		 */
+		public OnConflict<T> onConflict(String... columns) {
+			if (!(mParent instanceof Columns)) {
+				throw new MalformedQueryException("Upserts must declare the inserted columns.");
+			}
+			return new OnConflict<T>(this, mTable, ((Columns) mParent).mColumns, columns);
+		}
+
+		@Override
+		public void execute() {
+			execute(null);
 		}
 
 		@Override
 		protected String getPartSql() {
+			return createValuesSql(mRows);
+		}
+
+		@Override
+		protected String[] getPartArgs() {
+			return createArgs(mRows);
+		}
+
+		void execute(String conflictSql) {
+			final int columnCount = Math.max(1, mRows.get(0).length);
+			final int rowsPerStatement = SQLiteVersion.supportsMultiRowValues(Ollie.getDatabase())
+					? Math.max(1, Math.min(Ollie.MAX_SQL_VARIABLES / columnCount, MAX_ROWS))
+					: 1;
+			if (mRows.size() <= rowsPerStatement) {
+				execute(mRows, conflictSql);
+			} else {
+				Ollie.beginTransaction();
+				try {
+					if (rowsPerStatement == 1) {
+						executeEach(conflictSql);
+					} else {
+						for (int start = 0; start < mRows.size(); start += rowsPerStatement) {
+							execute(mRows.subList(start, Math.min(start + rowsPerStatement, mRows.size())),
+									conflictSql);
+						}
+					}
+					Ollie.setTransactionSuccessful();
+				} finally {
+					Ollie.endTransaction();
+				}
+			}
+			InvalidationTracker.notifyChanged(mTable);
+		}
+
+		private void execute(List<Object[]> rows, String conflictSql) {
+			QueryUtils.execSQL(createSql(rows, conflictSql), createArgs(rows));
+		}
+
+		// Compiles a single-row statement once and executes it for every row.
+		private void executeEach(String conflictSql) {
+			final SQLiteStatement statement = Ollie.getDatabase().compileStatement(
+					createSql(mRows.subList(0, 1), conflictSql));
+			try {
+				for (Object[] row : mRows) {
+					statement.bindAllArgsAsStrings(toStringArray(row));
+					statement.execute();
+				}
+			} finally {
+				statement.close();
+			}
+		}
+
+		private String createSql(List<Object[]> rows, String conflictSql) {
+			final StringBuilder sql = new StringBuilder(mParent.getSql()).append(" ").append(createValuesSql(rows));
+			if (conflictSql != null) {
+				sql.append(" ").append(conflictSql);
+			}
+			return sql.toString();
+		}
+
+		private String createValuesSql(List<Object[]> rows) {
 			StringBuilder builder = new StringBuilder();
-			builder.append("VALUES(");
-			for (int i = 0; i < mValuesArgs.length; i++) {
-				if (i > 0) {
+			builder.append("VALUES");
+			for (int row = 0; row < rows.size(); row++) {
+				if (row > 0) {
 					builder.append(", ");
 				}
-				builder.append("?");
+				builder.append("(");
+				for (int i = 0; i < rows.get(row).length; i++) {
+					if (i > 0) {
+						builder.append(", ");
+					}
+					builder.append("?");
+				}
+				builder.append(")");
 			}
-			builder.append(")");
 			return builder.toString();
 		}
 
+		private String[] createArgs(List<Object[]> rows) {
+			if (rows.size() == 1) {
+				return toStringArray(rows.get(0));
+			}
+
+			final List<String> args = new ArrayList<String>();
+			for (Object[] row : rows) {
+				args.addAll(Arrays.asList(toStringArray(row)));
+			}
+			return args.toArray(new String[args.size()]);
+		}
+	}
+
+	public static final class OnConflict<T extends Model> extends ExecutableQueryBase<T> {
+		private String[] mColumns;
+		private String[] mConflictColumns;
+
+		private OnConflict(Query parent, Class<T> table, String[] columns, String[] conflictColumns) {
+			super(parent, table);
+			mColumns = columns;
+			mConflictColumns = conflictColumns;
+		}
+
 		@Override
-		protected String[] getPartArgs() {
-			return toStringArray(mValuesArgs);
+		public void execute() {
+			if (!SQLiteVersion.supportsUpsert(Ollie.getDatabase())) {
+				throw new UnsupportedOperationException("ON CONFLICT ... DO UPDATE requires SQLite 3.24.0 or later.");
+			}
+			((Values) mParent).execute(getPartSql());
+		}
+
+		@Override
+		protected String getPartSql() {
+			final List<String> conflictColumns = Arrays.asList(mConflictColumns);
+			final StringBuilder assignments = new StringBuilder();
+			for (String column : mColumns) {
+				if (!conflictColumns.contains(column) && !Model._ID.equals(column)) {
+					assignments.append(assignments.length() > 0 ? ", " : "");
+					assignments.append(column).append("=excluded.").append(column);
+				}
+			}
+
+			StringBuilder builder = new StringBuilder();
+			builder.append("ON CONFLICT(").append(TextUtils.join(", ", mConflictColumns)).append(") DO ");
+			if (assignments.length() > 0) {
+				builder.append("UPDATE SET ").append(assignments);
+			} else {
+				builder.append("NOTHING");
+			}
+			return builder.toString();
 		}
 	}
 }
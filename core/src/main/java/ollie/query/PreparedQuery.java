@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.query;
+
+import ollie.CursorIterator;
+import ollie.CursorList;
+import ollie.Model;
+
+import java.util.List;
+
+/**
+ * <p>
+ * An immutable query whose SQL is built once. Each execution binds fresh arguments, or the arguments given to the
+ * query builder when none are passed. Prepared queries are thread-safe and may be kept in static fields.
+ * </p>
+ * <pre>
+ * private static final PreparedQuery&lt;Note&gt; NOTES_BY_TITLE = Select.from(Note.class).where("title=?").prepare();
+ *
+ * List&lt;Note&gt; notes = NOTES_BY_TITLE.fetch("My note");
+ * </pre>
+ *
+ * @param <T> The model type.
+ */
+public final class PreparedQuery<T extends Model> {
+	private final Class<T> mTable;
+	private final String mSql;
+	private final String mSingleSql;
+	private final String[] mArgs;
+	private final String[] mIncludes;
+	private final boolean mPrimaryKeyLookup;
+
+	PreparedQuery(Class<T> table, String sql, String singleSql, String[] args, String[] includes,
+			boolean primaryKeyLookup) {
+
+		mTable = table;
+		mSql = sql;
+		mSingleSql = singleSql;
+		mArgs = args;
+		mIncludes = includes;
+		mPrimaryKeyLookup = primaryKeyLookup;
+	}
+
+	public String getSql() {
+		return mSql;
+	}
+
+	public List<T> fetch(Object... args) {
+		return ResultQueryBase.fetch(mTable, mSql, bindArgs(args), mIncludes);
+	}
+
+	public CursorList<T> fetchLazy(Object... args) {
+		return ResultQueryBase.fetchLazy(mTable, mSql, bindArgs(args), CursorList.DEFAULT_WINDOW_SIZE);
+	}
+
+	public CursorIterator<T> iterate(Object... args) {
+		return ResultQueryBase.iterate(mTable, mSql, bindArgs(args), false);
+	}
+
+	public T fetchSingle(Object... args) {
+		return ResultQueryBase.fetchSingle(mTable, mSingleSql, bindArgs(args), mIncludes, mPrimaryKeyLookup);
+	}
+
+	public <E> E fetchValue(Class<E> type, Object... args) {
+		return ResultQueryBase.fetchValue(mSql, bindArgs(args), type);
+	}
+
+	public long fetchLong(Object... args) {
+		return ResultQueryBase.fetchLong(mSql, bindArgs(args));
+	}
+
+	public double fetchDouble(Object... args) {
+		return ResultQueryBase.fetchDouble(mSql, bindArgs(args));
+	}
+
+	public String fetchString(Object... args) {
+		return ResultQueryBase.fetchString(mSql, bindArgs(args));
+	}
+
+	private String[] bindArgs(Object[] args) {
+		if (args == null || args.length == 0) {
+			return mArgs;
+		}
+
+		final String[] boundArgs = new String[args.length];
+		for (int i = 0; i < args.length; i++) {
+			boundArgs[i] = String.valueOf(args[i]);
+		}
+		return boundArgs;
+	}
+}
@@ -17,6 +17,9 @@
 package ollie.query;
 
 import ollie.Model;
+import ollie.Ollie;
+
+import java.util.Set;
 
 public abstract class QueryBase<T extends Model> implements Query {
 	protected Query mParent;
@@ -43,6 +46,32 @@ public abstract class QueryBase<T extends Model> implements Query {
 		return getPartArgs();
 	}
 
+	/**
+	 * Returns the Model-typed columns to load eagerly, as declared on the FROM clause of a select.
+	 *
+	 * @return The column names, or null.
+	 */
+	protected String[] getIncludes() {
+		if (mParent instanceof QueryBase) {
+			return ((QueryBase) mParent).getIncludes();
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the names of the tables read by the query.
+	 *
+	 * @param tableNames The table names.
+	 */
+	protected void addTableNames(Set<String> tableNames) {
+		if (mParent instanceof QueryBase) {
+			((QueryBase) mParent).addTableNames(tableNames);
+		}
+		if (mTable != null) {
+			tableNames.add(Ollie.getTableName(mTable));
+		}
+	}
+
 	protected String getPartSql() {
 		return null;
 	}
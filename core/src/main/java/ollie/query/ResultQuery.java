@@ -16,20 +16,45 @@
 
 package ollie.query;
 
+import ollie.CursorIterator;
+import ollie.CursorList;
 import ollie.Model;
 import rx.Observable;
+import rx.functions.Action1;
 
 import java.util.List;
 
 public interface ResultQuery<T extends Model> extends Query {
 	List<T> fetch();
 
+	CursorList<T> fetchLazy();
+
+	CursorList<T> fetchLazy(int windowSize);
+
+	CursorIterator<T> iterate();
+
+	CursorIterator<T> iterate(boolean reuseEntity);
+
+	void forEach(Action1<? super T> action);
+
+	void forEach(Action1<? super T> action, boolean reuseEntity);
+
 	T fetchSingle();
 
 	<E> E fetchValue(Class<E> type);
 
+	long fetchLong();
+
+	double fetchDouble();
+
+	String fetchString();
+
+	PreparedQuery<T> prepare();
+
 	Observable<List<T>> observable();
 
+	Observable<List<T>> observeLive();
+
 	Observable<T> observableSingle();
 
 	<E> Observable<E> observableValue(Class<E> type);
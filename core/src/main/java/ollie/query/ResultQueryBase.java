@@ -17,59 +17,140 @@
 package ollie.query;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import ollie.CursorIterator;
+import ollie.CursorList;
+import ollie.InvalidationTracker;
 import ollie.Model;
 import ollie.Ollie;
-import ollie.util.QueryUtils;
+import ollie.internal.QueryPlanDiagnostics;
+import ollie.internal.StatementCache;
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static rx.Observable.OnSubscribe;
 
 public abstract class ResultQueryBase<T extends Model> extends QueryBase<T> implements ResultQuery<T> {
+	private static final int STATEMENT_CACHE_SIZE = 32;
+	private static final StatementCache sStatementCache = new StatementCache(STATEMENT_CACHE_SIZE);
+	private static final long LIVE_DEBOUNCE_MILLIS = 50;
+
 	public ResultQueryBase(Query parent, Class<T> table) {
 		super(parent, table);
 	}
 
 	@Override
 	public List<T> fetch() {
-		return QueryUtils.rawQuery(mTable, getSql(), getArgs());
+		return fetch(mTable, getSql(), getArgs(), getIncludes());
 	}
 
 	@Override
-	public T fetchSingle() {
-		List<T> results = QueryUtils.rawQuery(mTable, getSql(), getArgs());
-		if (!results.isEmpty()) {
-			return results.get(0);
+	public CursorList<T> fetchLazy() {
+		return fetchLazy(CursorList.DEFAULT_WINDOW_SIZE);
+	}
+
+	@Override
+	public CursorList<T> fetchLazy(int windowSize) {
+		checkNoIncludes();
+		return fetchLazy(mTable, getSql(), getArgs(), windowSize);
+	}
+
+	@Override
+	public CursorIterator<T> iterate() {
+		return iterate(false);
+	}
+
+	@Override
+	public CursorIterator<T> iterate(boolean reuseEntity) {
+		checkNoIncludes();
+		return iterate(mTable, getSql(), getArgs(), reuseEntity);
+	}
+
+	@Override
+	public void forEach(Action1<? super T> action) {
+		forEach(action, false);
+	}
+
+	@Override
+	public void forEach(Action1<? super T> action, boolean reuseEntity) {
+		final CursorIterator<T> iterator = iterate(reuseEntity);
+		try {
+			while (iterator.hasNext()) {
+				action.call(iterator.next());
+			}
+		} finally {
+			iterator.close();
 		}
-		return null;
+	}
+
+	@Override
+	public T fetchSingle() {
+		return fetchSingle(mTable, getSingleSql(), getArgs(), getIncludes(), isPrimaryKeyLookup());
 	}
 
 	@Override
 	public <E> E fetchValue(Class<E> type) {
-		final Cursor cursor = Ollie.getDatabase().rawQuery(getSql(), getArgs());
-		if (!cursor.moveToFirst()) {
-			return null;
-		}
+		return fetchValue(getSql(), getArgs(), type);
+	}
+
+	@Override
+	public long fetchLong() {
+		return fetchLong(getSql(), getArgs());
+	}
+
+	@Override
+	public double fetchDouble() {
+		return fetchDouble(getSql(), getArgs());
+	}
+
+	@Override
+	public String fetchString() {
+		return fetchString(getSql(), getArgs());
+	}
 
-		if (type.equals(Byte[].class) || type.equals(byte[].class)) {
-			return (E) cursor.getBlob(0);
-		} else if (type.equals(double.class) || type.equals(Double.class)) {
-			return (E) Double.valueOf(cursor.getDouble(0));
-		} else if (type.equals(float.class) || type.equals(Float.class)) {
-			return (E) Float.valueOf(cursor.getFloat(0));
-		} else if (type.equals(int.class) || type.equals(Integer.class)) {
-			return (E) Integer.valueOf(cursor.getInt(0));
-		} else if (type.equals(long.class) || type.equals(Long.class)) {
-			return (E) Long.valueOf(cursor.getLong(0));
-		} else if (type.equals(short.class) || type.equals(Short.class)) {
-			return (E) Short.valueOf(cursor.getShort(0));
-		} else if (type.equals(String.class)) {
-			return (E) cursor.getString(0);
+	@Override
+	public PreparedQuery<T> prepare() {
+		return new PreparedQuery<T>(mTable, getSql(), getSingleSql(), getArgs(), getIncludes(),
+				isPrimaryKeyLookup());
+	}
+
+	// Streamed results load each row as it is read, so referenced entities can't be loaded up front.
+	private void checkNoIncludes() {
+		final String[] includes = getIncludes();
+		if (includes != null && includes.length > 0) {
+			throw new MalformedQueryException("include() is not supported by fetchLazy(), iterate() or forEach().");
 		}
+	}
+
+	/**
+	 * Returns whether the query already limits the number of rows.
+	 */
+	protected boolean hasLimit() {
+		return false;
+	}
 
-		return null;
+	/**
+	 * Returns whether the query selects a row of its table by id alone, so a cached entity can be returned by
+	 * fetchSingle().
+	 */
+	protected boolean isPrimaryKeyLookup() {
+		return false;
+	}
+
+	private String getSingleSql() {
+		final String sql = getSql();
+		return hasLimit() ? sql : sql + " LIMIT 1";
 	}
 
 	@Override
@@ -86,6 +167,46 @@ public abstract class ResultQueryBase<T extends Model> extends QueryBase<T> impl
 		});
 	}
 
+	/**
+	 * Returns an observable which emits the query result on subscription and again whenever a table read by the
+	 * query is written to. Bursts of writes are debounced, queries run on the io scheduler, and results are only
+	 * emitted when the selected rows have changed.
+	 *
+	 * @return An observable of query results.
+	 */
+	@Override
+	public Observable<List<T>> observeLive() {
+		final Class<T> table = mTable;
+		final String sql = getSql();
+		final String[] args = getArgs();
+		final String[] includes = getIncludes();
+		final Set<String> tableNames = new HashSet<String>();
+		addTableNames(tableNames);
+
+		return InvalidationTracker.observe(tableNames.toArray(new String[tableNames.size()]))
+				.debounce(LIVE_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+				.startWith(Ollie.getTableName(table))
+				.observeOn(Schedulers.io())
+				.map(new Func1<String, LiveResult<T>>() {
+					@Override
+					public LiveResult<T> call(String tableName) {
+						return LiveResult.fetch(table, sql, args, includes);
+					}
+				})
+				.distinctUntilChanged(new Func1<LiveResult<T>, List<List<Object>>>() {
+					@Override
+					public List<List<Object>> call(LiveResult<T> result) {
+						return result.mRows;
+					}
+				})
+				.map(new Func1<LiveResult<T>, List<T>>() {
+					@Override
+					public List<T> call(LiveResult<T> result) {
+						return result.mEntities;
+					}
+				});
+	}
+
 	@Override
 	public Observable<T> observableSingle() {
 		return Observable.create(new OnSubscribe<T>() {
@@ -113,4 +234,142 @@ public abstract class ResultQueryBase<T extends Model> extends QueryBase<T> impl
 			}
 		});
 	}
+
+	// Query execution shared with PreparedQuery
+
+	static <T extends Model> List<T> fetch(Class<T> table, String sql, String[] args, String[] includes) {
+		return Ollie.processAndCloseCursor(table, rawQuery(sql, args), includes);
+	}
+
+	static <T extends Model> T fetchSingle(Class<T> table, String sql, String[] args, String[] includes,
+			boolean primaryKeyLookup) {
+
+		if (primaryKeyLookup && args != null && args.length == 1) {
+			try {
+				final T entity = Ollie.getCachedEntity(table, Long.parseLong(args[0]));
+				if (entity != null) {
+					return entity;
+				}
+			} catch (NumberFormatException e) {
+				// Not an id, run the query.
+			}
+		}
+
+		return Ollie.processSingleAndCloseCursor(table, rawQuery(sql, args), includes);
+	}
+
+	static <T extends Model> CursorList<T> fetchLazy(Class<T> table, String sql, String[] args, int windowSize) {
+		return new CursorList<T>(table, rawQuery(sql, args), windowSize);
+	}
+
+	static <T extends Model> CursorIterator<T> iterate(Class<T> table, String sql, String[] args,
+			boolean reuseEntity) {
+
+		return new CursorIterator<T>(table, rawQuery(sql, args), reuseEntity);
+	}
+
+	static <E> E fetchValue(String sql, String[] args, Class<E> type) {
+		final Cursor cursor = rawQuery(sql, args);
+		try {
+			if (!cursor.moveToFirst()) {
+				return null;
+			}
+
+			if (type.equals(Byte[].class) || type.equals(byte[].class)) {
+				return (E) cursor.getBlob(0);
+			} else if (type.equals(double.class) || type.equals(Double.class)) {
+				return (E) Double.valueOf(cursor.getDouble(0));
+			} else if (type.equals(float.class) || type.equals(Float.class)) {
+				return (E) Float.valueOf(cursor.getFloat(0));
+			} else if (type.equals(int.class) || type.equals(Integer.class)) {
+				return (E) Integer.valueOf(cursor.getInt(0));
+			} else if (type.equals(long.class) || type.equals(Long.class)) {
+				return (E) Long.valueOf(cursor.getLong(0));
+			} else if (type.equals(short.class) || type.equals(Short.class)) {
+				return (E) Short.valueOf(cursor.getShort(0));
+			} else if (type.equals(String.class)) {
+				return (E) cursor.getString(0);
+			}
+
+			return null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	static long fetchLong(String sql, String[] args) {
+		QueryPlanDiagnostics.explain(Ollie.getReadableDatabase(), sql, args);
+		return sStatementCache.simpleQueryForLong(Ollie.getReadableDatabase(), sql, args);
+	}
+
+	// SQLiteStatement can only read a single value as a long or string, so read the REAL from a cursor.
+	static double fetchDouble(String sql, String[] args) {
+		final Cursor cursor = rawQuery(sql, args);
+		try {
+			return cursor.moveToFirst() ? cursor.getDouble(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	static String fetchString(String sql, String[] args) {
+		QueryPlanDiagnostics.explain(Ollie.getReadableDatabase(), sql, args);
+		return sStatementCache.simpleQueryForString(Ollie.getReadableDatabase(), sql, args);
+	}
+
+	private static Cursor rawQuery(String sql, String[] args) {
+		final SQLiteDatabase db = Ollie.getReadableDatabase();
+		QueryPlanDiagnostics.explain(db, sql, args);
+		return db.rawQuery(sql, args);
+	}
+
+	// A live query result along with the raw row values used to detect whether it has changed. Entities can't be
+	// compared directly since cached instances are updated in place.
+	private static final class LiveResult<T extends Model> {
+		private final List<List<Object>> mRows;
+		private final List<T> mEntities;
+
+		private LiveResult(List<List<Object>> rows, List<T> entities) {
+			mRows = rows;
+			mEntities = entities;
+		}
+
+		static <T extends Model> LiveResult<T> fetch(Class<T> table, String sql, String[] args, String[] includes) {
+			final Cursor cursor = rawQuery(sql, args);
+			try {
+				return new LiveResult<T>(readRows(cursor), Ollie.processCursor(table, cursor, includes));
+			} finally {
+				cursor.close();
+			}
+		}
+
+		private static List<List<Object>> readRows(Cursor cursor) {
+			final List<List<Object>> rows = new ArrayList<List<Object>>(cursor.getCount());
+			final int columnCount = cursor.getColumnCount();
+			while (cursor.moveToNext()) {
+				final Object[] values = new Object[columnCount];
+				for (int i = 0; i < columnCount; i++) {
+					switch (cursor.getType(i)) {
+						case Cursor.FIELD_TYPE_INTEGER:
+							values[i] = cursor.getLong(i);
+							break;
+						case Cursor.FIELD_TYPE_FLOAT:
+							values[i] = cursor.getDouble(i);
+							break;
+						case Cursor.FIELD_TYPE_STRING:
+							values[i] = cursor.getString(i);
+							break;
+						case Cursor.FIELD_TYPE_BLOB:
+							values[i] = ByteBuffer.wrap(cursor.getBlob(i));
+							break;
+						default:
+							values[i] = null;
+							break;
+					}
+				}
+				rows.add(Arrays.asList(values));
+			}
+			return rows;
+		}
+	}
 }
@@ -22,6 +22,9 @@ import ollie.Ollie;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class Select<T extends Model> extends QueryBase<T> {
 	private Select() {
@@ -53,6 +56,10 @@ public final class Select<T extends Model> extends QueryBase<T> {
 			return new From<T>(this, table);
 		}
 
+		boolean selectsAllColumns() {
+			return mColumns == null || mColumns.length == 0;
+		}
+
 		@Override
 		public String getPartSql() {
 			StringBuilder builder = new StringBuilder();
@@ -67,11 +74,26 @@ public final class Select<T extends Model> extends QueryBase<T> {
 
 	public static final class From<T extends Model> extends ResultQueryBase<T> {
 		private List<Join> mJoins = new ArrayList<Join>();
+		private String[] mIncludes;
 
 		private From(Query parent, Class<T> table) {
 			super(parent, table);
 		}
 
+		/**
+		 * Load the entities referenced by the given Model-typed columns with one query per referenced table, instead
+		 * of one query per row. Applies to fetch(), fetchSingle() and the observables built on them. fetchLazy(),
+		 * iterate() and forEach() read rows as they are accessed, so they throw a MalformedQueryException if the
+		 * query has includes.
+		 *
+		 * @param columns The names of the Model-typed columns.
+		 * @return This query.
+		 */
+		public From<T> include(String... columns) {
+			mIncludes = columns;
+			return this;
+		}
+
 		public <E extends Model> Join<T, E> join(Class<E> table) {
 			return addJoin(table, Join.Type.JOIN);
 		}
@@ -138,6 +160,23 @@ public final class Select<T extends Model> extends QueryBase<T> {
 			return join;
 		}
 
+		@Override
+		protected String[] getIncludes() {
+			return mIncludes;
+		}
+
+		@Override
+		protected void addTableNames(Set<String> tableNames) {
+			super.addTableNames(tableNames);
+			for (Join join : mJoins) {
+				tableNames.add(Ollie.getTableName(join.mTable));
+			}
+		}
+
+		boolean selectsWholeTable() {
+			return mJoins.isEmpty() && mParent instanceof Columns && ((Columns) mParent).selectsAllColumns();
+		}
+
 		@Override
 		public String getPartSql() {
 			StringBuilder builder = new StringBuilder();
@@ -201,6 +240,9 @@ public final class Select<T extends Model> extends QueryBase<T> {
 	}
 
 	public static final class Where<T extends Model> extends ResultQueryBase<T> {
+		private static final Pattern PRIMARY_KEY_PATTERN =
+				Pattern.compile("\\s*(?:(\\w+)\\.)?" + Model._ID + "\\s*=\\s*\\?\\s*");
+
 		private String mWhere;
 		private Object[] mWhereArgs;
 
@@ -222,6 +264,17 @@ public final class Select<T extends Model> extends QueryBase<T> {
 			return new Limit<T>(this, mTable, limits);
 		}
 
+		@Override
+		protected boolean isPrimaryKeyLookup() {
+			if (!(mParent instanceof From) || !((From) mParent).selectsWholeTable()) {
+				return false;
+			}
+
+			final Matcher matcher = PRIMARY_KEY_PATTERN.matcher(mWhere);
+			return matcher.matches()
+					&& (matcher.group(1) == null || matcher.group(1).equals(Ollie.getTableName(mTable)));
+		}
+
 		@Override
 		public String getPartSql() {
 			return "WHERE " + mWhere;
@@ -316,6 +369,11 @@ public final class Select<T extends Model> extends QueryBase<T> {
 		public String getPartSql() {
 			return "LIMIT " + mLimit;
 		}
+
+		@Override
+		protected boolean hasLimit() {
+			return true;
+		}
 	}
 
 	public static final class Offset<T extends Model> extends ResultQueryBase<T> {
@@ -330,5 +388,10 @@ public final class Select<T extends Model> extends QueryBase<T> {
 		protected String getPartSql() {
 			return "OFFSET " + mOffset;
 		}
+
+		@Override
+		protected boolean hasLimit() {
+			return true;
+		}
 	}
 }
@@ -1,45 +1,53 @@
 package ollie.util;
 
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.os.CancellationSignal;
 import ollie.Model;
 import ollie.Ollie;
+import ollie.internal.QueryPlanDiagnostics;
 
 import java.util.List;
 
 import static android.database.sqlite.SQLiteDatabase.CursorFactory;
 
 /**
- * Utility class for interacting with the database using SQLiteDatabase methods.
+ * Utility class for interacting with the database using SQLiteDatabase methods. Queries run on the readable
+ * database and statements on the writable database.
  */
 public class QueryUtils {
 	public static void execSQL(String sql) {
+		explain(sql, null);
 		Ollie.getDatabase().execSQL(sql);
 	}
 
 	public static void execSQL(String sql, String[] selectionArgs) {
+		explain(sql, selectionArgs);
 		Ollie.getDatabase().execSQL(sql, selectionArgs);
 	}
 
 	public static <T extends Model> List<T> query(Class<T> cls, boolean distinct, String[] columns, String selection,
 			String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().query(distinct, Ollie.getTableName(cls), columns,
-				selection, selectionArgs, groupBy, having, orderBy, limit));
+		explainQuery(distinct, cls, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().query(distinct, Ollie.getTableName(cls),
+				columns, selection, selectionArgs, groupBy, having, orderBy, limit));
 	}
 
 	public static <T extends Model> List<T> query(Class<T> cls, boolean distinct, String[] columns, String selection,
 			String[] selectionArgs, String groupBy, String having, String orderBy, String limit,
 			CancellationSignal cancellationSignal) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().query(distinct, Ollie.getTableName(cls), columns,
-				selection, selectionArgs, groupBy, having, orderBy, limit, cancellationSignal));
+		explainQuery(distinct, cls, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().query(distinct, Ollie.getTableName(cls),
+				columns, selection, selectionArgs, groupBy, having, orderBy, limit, cancellationSignal));
 	}
 
 	public static <T extends Model> List<T> queryWithFactory(Class<T> cls, CursorFactory cursorFactory,
 			boolean distinct, String[] columns, String selection, String[] selectionArgs, String groupBy,
 			String having, String orderBy, String limit) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().queryWithFactory(cursorFactory, distinct,
+		explainQuery(distinct, cls, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().queryWithFactory(cursorFactory, distinct,
 				Ollie.getTableName(cls), columns, selection, selectionArgs, groupBy, having, orderBy, limit));
 	}
 
@@ -47,7 +55,8 @@ public class QueryUtils {
 			boolean distinct, String[] columns, String selection, String[] selectionArgs, String groupBy,
 			String having, String orderBy, String limit, CancellationSignal cancellationSignal) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().queryWithFactory(cursorFactory, distinct,
+		explainQuery(distinct, cls, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().queryWithFactory(cursorFactory, distinct,
 				Ollie.getTableName(cls), columns, selection, selectionArgs, groupBy, having, orderBy, limit,
 				cancellationSignal));
 	}
@@ -55,38 +64,58 @@ public class QueryUtils {
 	public static <T extends Model> List<T> query(Class<T> cls, String[] columns, String selection,
 			String[] selectionArgs, String groupBy, String having, String orderBy) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().query(Ollie.getTableName(cls), columns, selection,
-				selectionArgs, groupBy, having, orderBy));
+		explainQuery(false, cls, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().query(Ollie.getTableName(cls), columns,
+				selection, selectionArgs, groupBy, having, orderBy));
 	}
 
 	public static <T extends Model> List<T> query(Class<T> cls, String[] columns, String selection,
 			String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().query(Ollie.getTableName(cls), columns, selection,
-				selectionArgs, groupBy, having, orderBy, limit));
+		explainQuery(false, cls, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().query(Ollie.getTableName(cls), columns,
+				selection, selectionArgs, groupBy, having, orderBy, limit));
 	}
 
 	public static <T extends Model> List<T> rawQuery(Class<T> cls, String sql, String[] selectionArgs) {
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().rawQuery(sql, selectionArgs));
+		explain(sql, selectionArgs);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().rawQuery(sql, selectionArgs));
 	}
 
 	public static <T extends Model> List<T> rawQuery(Class<T> cls, String sql, String[] selectionArgs,
 			CancellationSignal cancellationSignal) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().rawQuery(sql, selectionArgs, cancellationSignal));
+		explain(sql, selectionArgs);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().rawQuery(sql, selectionArgs,
+				cancellationSignal));
 	}
 
 	public static <T extends Model> List<T> rawQueryWithFactory(Class<T> cls, CursorFactory cursorFactory, String sql,
 			String[] selectionArgs, String editTable) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().rawQueryWithFactory(cursorFactory, sql,
+		explain(sql, selectionArgs);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().rawQueryWithFactory(cursorFactory, sql,
 				selectionArgs, editTable));
 	}
 
 	public static <T extends Model> List<T> rawQueryWithFactory(Class<T> cls, CursorFactory cursorFactory, String sql,
 			String[] selectionArgs, String editTable, CancellationSignal cancellationSignal) {
 
-		return Ollie.processAndCloseCursor(cls, Ollie.getDatabase().rawQueryWithFactory(cursorFactory, sql,
+		explain(sql, selectionArgs);
+		return Ollie.processAndCloseCursor(cls, Ollie.getReadableDatabase().rawQueryWithFactory(cursorFactory, sql,
 				selectionArgs, editTable, cancellationSignal));
 	}
+
+	private static void explain(String sql, String[] selectionArgs) {
+		QueryPlanDiagnostics.explain(Ollie.getReadableDatabase(), sql, selectionArgs);
+	}
+
+	private static void explainQuery(boolean distinct, Class<? extends Model> cls, String[] columns, String selection,
+			String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+
+		if (QueryPlanDiagnostics.isEnabled()) {
+			explain(SQLiteQueryBuilder.buildQueryString(distinct, Ollie.getTableName(cls), columns, selection, groupBy,
+					having, orderBy, limit), selectionArgs);
+		}
+	}
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ollie.test;
+
+import ollie.internal.LongLruCache;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongLruCacheTest {
+	@Test
+	public void testPutGetRemove() {
+		LongLruCache<String> cache = new LongLruCache<String>(4);
+		assertThat(cache.get(1)).isNull();
+
+		assertThat(cache.put(1, "a")).isNull();
+		assertThat(cache.put(1, "b")).isEqualTo("a");
+		assertThat(cache.get(1)).isEqualTo("b");
+		assertThat(cache.size()).isEqualTo(1);
+
+		assertThat(cache.remove(1)).isEqualTo("b");
+		assertThat(cache.get(1)).isNull();
+		assertThat(cache.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		LongLruCache<String> cache = new LongLruCache<String>(3);
+		cache.put(1, "a");
+		cache.put(2, "b");
+		cache.put(3, "c");
+
+		// Touch 1 so that 2 is the least recently used.
+		cache.get(1);
+		cache.put(4, "d");
+
+		assertThat(cache.size()).isEqualTo(3);
+		assertThat(cache.get(2)).isNull();
+		assertThat(cache.get(1)).isEqualTo("a");
+		assertThat(cache.get(3)).isEqualTo("c");
+		assertThat(cache.get(4)).isEqualTo("d");
+	}
+
+	@Test
+	public void testMatchesMap() {
+		final int maxSize = 100;
+		final LongLruCache<Long> cache = new LongLruCache<Long>(maxSize);
+		final Map<Long, Long> map = new HashMap<Long, Long>();
+		final Random rand = new Random(0);
+
+		// Keys within the cache bound never get evicted, so the cache must behave exactly like a map.
+		for (int i = 0; i < 100000; i++) {
+			final long key = rand.nextInt(maxSize) * 4096L;
+			switch (rand.nextInt(3)) {
+				case 0:
+					assertThat(cache.put(key, (long) i)).isEqualTo(map.put(key, (long) i));
+					break;
+				case 1:
+					assertThat(cache.remove(key)).isEqualTo(map.remove(key));
+					break;
+				default:
+					assertThat(cache.get(key)).isEqualTo(map.get(key));
+					break;
+			}
+			assertThat(cache.size()).isEqualTo(map.size());
+		}
+	}
+}
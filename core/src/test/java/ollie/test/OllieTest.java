@@ -17,13 +17,26 @@
 package ollie.test;
 
 import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import ollie.CursorIterator;
+import ollie.CursorList;
+import ollie.InvalidationTracker;
+import ollie.Lazy;
 import ollie.Model;
 import ollie.Ollie;
+import ollie.OllieProvider;
+import ollie.annotation.ConflictClause;
+import ollie.internal.QueryPlanDiagnostics;
 import ollie.query.*;
 import ollie.test.content.OllieSampleProvider;
+import ollie.test.model.BoundedNote;
+import ollie.test.model.ExtendedNote;
 import ollie.test.model.Note;
 import ollie.test.model.NoteTag;
 import ollie.test.model.Tag;
+import ollie.test.model.UncachedNote;
 import ollie.test.shadows.PersistentShadowSQLiteOpenHelper;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -34,13 +47,20 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowContentResolver;
 import org.robolectric.shadows.ShadowLog;
+import rx.Subscription;
 import rx.functions.Action1;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static ollie.Ollie.LogLevel;
+import static ollie.Ollie.SynchronousMode;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE, shadows = PersistentShadowSQLiteOpenHelper.class)
@@ -64,6 +84,8 @@ public class OllieTest {
 		Ollie.with(Robolectric.application)
 				.setName("OllieSample.db")
 				.setLogLevel(LogLevel.FULL)
+				.setWriteAheadLoggingEnabled(true)
+				.setSynchronousMode(SynchronousMode.NORMAL)
 				.init();
 	}
 
@@ -100,6 +122,12 @@ public class OllieTest {
 		}
 	}
 
+	@Test
+	public void testSynchronousMode() {
+		// NORMAL, which write-ahead logging must not reset.
+		assertThat(DatabaseUtils.longForQuery(Ollie.getDatabase(), "PRAGMA synchronous", null)).isEqualTo(1l);
+	}
+
 	@Test
 	public void testSaveEntity() {
 		Note note = new Note();
@@ -112,6 +140,169 @@ public class OllieTest {
 		assertThat(note.id).isGreaterThan(0l);
 	}
 
+	@Test
+	public void testSaveAllEntities() {
+		final List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < NOTE_COUNT; i++) {
+			Note note = new Note();
+			note.title = "Batch note " + i;
+			note.body = "This is the body for batch note #" + i;
+			notes.add(note);
+		}
+
+		Model.saveAll(notes);
+		for (Note note : notes) {
+			assertThat(note.id).isNotNull();
+			assertThat(note.id).isGreaterThan(0l);
+		}
+	}
+
+	@Test
+	public void testSaveAllRollsBack() {
+		final long count = Select.columns("COUNT(*)").from(Note.class).fetchLong();
+
+		final List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < 3; i++) {
+			Note note = new Note();
+			note.title = "Rolled back note " + i;
+			note.body = "This is the body for rolled back note #" + i;
+			notes.add(note);
+		}
+		// Violates the NOT NULL constraint on body.
+		notes.get(1).body = null;
+
+		try {
+			Model.saveAll(notes);
+			fail("Expected the batch to fail.");
+		} catch (SQLException e) {
+			// Expected.
+		}
+
+		for (Note note : notes) {
+			assertThat(note.id).isNull();
+		}
+		assertThat(Select.columns("COUNT(*)").from(Note.class).fetchLong()).isEqualTo(count);
+	}
+
+	@Test
+	public void testInsertMultipleRows() {
+		final long count = Select.columns("COUNT(*)").from(Note.class).fetchLong();
+
+		// More rows than fit in one statement's bound arguments.
+		final int rowCount = Ollie.MAX_SQL_VARIABLES;
+		Insert.Values<Note> insert = Insert.into(Note.class).columns("title", "body").values("Row 0", "Body 0");
+		for (int i = 1; i < rowCount; i++) {
+			insert = insert.values("Row " + i, "Body " + i);
+		}
+		insert.execute();
+
+		assertThat(Select.columns("COUNT(*)").from(Note.class).fetchLong()).isEqualTo(count + rowCount);
+	}
+
+	@Test
+	public void testInsertManySingleColumnRows() {
+		final long count = Select.columns("COUNT(*)").from(Tag.class).fetchLong();
+
+		// More rows than fit in one compound SELECT, although their arguments fit in one statement.
+		final int rowCount = 600;
+		Insert.Values<Tag> insert = Insert.into(Tag.class).columns("name").values("Single column tag 0");
+		for (int i = 1; i < rowCount; i++) {
+			insert = insert.values("Single column tag " + i);
+		}
+		insert.execute();
+
+		assertThat(Select.columns("COUNT(*)").from(Tag.class).fetchLong()).isEqualTo(count + rowCount);
+	}
+
+	@Test
+	public void testSaveConcurrentlyWithTransaction() throws InterruptedException {
+		final Note inside = new Note();
+		inside.body = "Saved inside a transaction";
+		final Note outside = new Note();
+		outside.body = "Saved outside a transaction";
+
+		runAlongsideTransaction(new Runnable() {
+			@Override
+			public void run() {
+				inside.save();
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				outside.save();
+			}
+		});
+
+		assertThat(inside.id).isGreaterThan(0l);
+		assertThat(outside.id).isGreaterThan(0l);
+		assertThat(outside.id).isNotEqualTo(inside.id);
+	}
+
+	@Test
+	public void testSaveChangedColumns() {
+		Note note = new Note();
+		note.title = "Original title";
+		note.body = "Original body";
+		note.save();
+
+		// Change the title behind the entity's back. Saving the entity must only write the body.
+		Update.table(Note.class).set("title=?", "Updated title").where(Model._ID + "=?", note.id).execute();
+		note.body = "Updated body";
+		note.save();
+
+		assertThat(Select.columns("title").from(Note.class).where(Model._ID + "=?", note.id).fetchString())
+				.isEqualTo("Updated title");
+		assertThat(Select.columns("body").from(Note.class).where(Model._ID + "=?", note.id).fetchString())
+				.isEqualTo("Updated body");
+
+		// An unchanged entity is not written at all.
+		Update.table(Note.class).set("body=?", "Changed body").where(Model._ID + "=?", note.id).execute();
+		note.save();
+		assertThat(Select.columns("body").from(Note.class).where(Model._ID + "=?", note.id).fetchString())
+				.isEqualTo("Changed body");
+	}
+
+	@Test
+	public void testUpsertEntity() {
+		Tag tag = new Tag();
+		tag.name = "Upserted tag";
+		tag.upsert();
+		assertThat(tag.id).isNotNull();
+		assertThat(tag.id).isGreaterThan(0l);
+
+		// A second record with the same unique name updates the existing row.
+		Tag duplicate = new Tag();
+		duplicate.name = "Upserted tag";
+		duplicate.upsert();
+		assertThat(duplicate.id).isEqualTo(tag.id);
+		assertThat(Select.columns("COUNT(*)").from(Tag.class).where("name=?", "Upserted tag").fetchLong())
+				.isEqualTo(1l);
+	}
+
+	@Test
+	public void testUpsertConcurrentlyWithTransaction() throws InterruptedException {
+		final Tag inside = new Tag();
+		inside.name = "Upserted inside a transaction";
+		final Tag outside = new Tag();
+		outside.name = "Upserted outside a transaction";
+
+		runAlongsideTransaction(new Runnable() {
+			@Override
+			public void run() {
+				inside.upsert();
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				outside.upsert();
+			}
+		});
+
+		assertThat(inside.id).isGreaterThan(0l);
+		assertThat(outside.id).isGreaterThan(0l);
+		assertThat(outside.id).isNotEqualTo(inside.id);
+	}
+
 	@Test
 	public void testLoadEntity() {
 		Note note = Note.find(Note.class, 1l);
@@ -208,6 +399,24 @@ public class OllieTest {
 		assertThat(query.getSql()).isEqualTo(sql);
 		assertThat(query.getArgs()).isEqualTo(new String[]{"Testing INSERT", "Testing INSERT body.", "0"});
 
+		sql = "INSERT OR REPLACE INTO tags (name) VALUES(?)";
+		query = Insert.into(Tag.class, ConflictClause.REPLACE).columns("name").values("Testing INSERT");
+		assertThat(query.getSql()).isEqualTo(sql);
+
+		sql = "INSERT INTO notes (_id, title, body) VALUES(?, ?, ?) " +
+				"ON CONFLICT(title) DO UPDATE SET body=excluded.body";
+		query = Insert.into(Note.class).columns("_id", "title", "body").values("1", "Testing INSERT",
+				"Testing INSERT body.").onConflict("title");
+		assertThat(query.getSql()).isEqualTo(sql);
+		assertThat(query.getArgs()).isEqualTo(new String[]{"1", "Testing INSERT", "Testing INSERT body."});
+
+		sql = "INSERT INTO notes (title, body) VALUES(?, ?), (?, ?)";
+		query = Insert.into(Note.class).columns("title", "body").values("Testing INSERT", "Testing INSERT body.")
+				.values("Testing INSERT 2", "Testing INSERT body 2.");
+		assertThat(query.getSql()).isEqualTo(sql);
+		assertThat(query.getArgs()).isEqualTo(new String[]{"Testing INSERT", "Testing INSERT body.",
+				"Testing INSERT 2", "Testing INSERT body 2."});
+
 		try {
 			Insert.into(Note.class).columns("title", "body", "date")
 					.values("Testing INSERT", "Testing INSERT body.")
@@ -335,6 +544,247 @@ public class OllieTest {
 		}
 	}
 
+	@Test
+	public void testSelectInclude() {
+		NoteTag noteTag = new NoteTag();
+		noteTag.note = Select.from(Note.class).fetchSingle();
+		noteTag.tag = Select.from(Tag.class).fetchSingle();
+		noteTag.save();
+
+		List<NoteTag> noteTags = Select.from(NoteTag.class).include("note", "tag")
+				.where(NoteTag._ID + "=?", noteTag.id)
+				.fetch();
+		assertThat(noteTags).hasSize(1);
+		assertThat(noteTags.get(0).note).isEqualTo(noteTag.note);
+		assertThat(noteTags.get(0).tag).isEqualTo(noteTag.tag);
+	}
+
+	@Test
+	public void testSelectIncludeRejectsStreamedResults() {
+		try {
+			Select.from(NoteTag.class).include("note").fetchLazy();
+			fail("Expected includes to be rejected.");
+		} catch (Query.MalformedQueryException e) {
+			// Expected.
+		}
+		try {
+			Select.from(NoteTag.class).include("note").iterate();
+			fail("Expected includes to be rejected.");
+		} catch (Query.MalformedQueryException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testLazyReference() {
+		Tag tag = Select.from(Tag.class).fetchSingle();
+
+		ExtendedNote note = new ExtendedNote();
+		note.body = "lazy";
+		note.tag = Lazy.of(tag);
+		note.save();
+
+		// Bypass the identity cache to get a freshly loaded reference
+		CursorIterator<ExtendedNote> iterator = Select.from(ExtendedNote.class)
+				.where(ExtendedNote._ID + "=?", note.id)
+				.iterate(true);
+		note = iterator.next();
+		iterator.close();
+
+		assertThat(note.tag.isLoaded()).isFalse();
+		assertThat(note.tag.getId()).isEqualTo(tag.id);
+		assertThat(note.tag.get()).isEqualTo(tag);
+		assertThat(note.tag.isLoaded()).isTrue();
+	}
+
+	@Test
+	public void testFetchSingleFromCache() {
+		Note note = Select.from(Note.class).fetchSingle();
+		assertThat(note).isNotNull();
+
+		// Id lookups are served from the identity cache
+		assertThat(Model.find(Note.class, note.id)).isSameAs(note);
+		assertThat(Select.from(Note.class).where("notes._id = ?", note.id).fetchSingle()).isSameAs(note);
+	}
+
+	@Test
+	public void testCacheDisabled() {
+		UncachedNote note = new UncachedNote();
+		note.body = "Not cached";
+		note.save();
+
+		UncachedNote found = Model.find(UncachedNote.class, note.id);
+		assertThat(found).isNotSameAs(note);
+		assertThat(found.id).isEqualTo(note.id);
+		assertThat(found.body).isEqualTo(note.body);
+	}
+
+	@Test
+	public void testCacheSizePerModel() {
+		Note note = new Note();
+		note.body = "Cached alongside bounded notes";
+		note.save();
+
+		final BoundedNote[] boundedNotes = new BoundedNote[3];
+		for (int i = 0; i < boundedNotes.length; i++) {
+			boundedNotes[i] = new BoundedNote();
+			boundedNotes[i].body = "Bounded note " + i;
+			boundedNotes[i].save();
+		}
+
+		// The bounded cache holds two notes and evicts the eldest, without affecting the notes cache.
+		assertThat(Model.find(BoundedNote.class, boundedNotes[0].id)).isNotSameAs(boundedNotes[0]);
+		assertThat(Model.find(BoundedNote.class, boundedNotes[2].id)).isSameAs(boundedNotes[2]);
+		assertThat(Model.find(Note.class, note.id)).isSameAs(note);
+	}
+
+	@Test
+	public void testPreparedQuery() {
+		PreparedQuery<Note> query = Select.from(Note.class).where(Note._ID + "=?").prepare();
+		assertThat(query.getSql()).isEqualTo("SELECT notes.* FROM notes WHERE _id=?");
+
+		List<Note> notes = Select.from(Note.class).fetch();
+		for (Note note : notes) {
+			assertThat(query.fetchSingle(note.id)).isEqualTo(note);
+		}
+	}
+
+	@Test
+	public void testFetchLazy() {
+		List<Note> notes = Select.from(Note.class).fetch();
+		CursorList<Note> lazyNotes = Select.from(Note.class).fetchLazy(2);
+		assertThat(lazyNotes).hasSize(notes.size());
+
+		for (int i = 0; i < notes.size(); i++) {
+			assertThat(lazyNotes.get(i).id).isEqualTo(notes.get(i).id);
+		}
+
+		lazyNotes.close();
+		assertThat(lazyNotes.isClosed()).isTrue();
+	}
+
+	@Test
+	public void testIterate() {
+		final List<Note> notes = Select.from(Note.class).fetch();
+		final List<Long> ids = new ArrayList<Long>();
+		Select.from(Note.class).forEach(new Action1<Note>() {
+			@Override
+			public void call(Note note) {
+				ids.add(note.id);
+			}
+		}, true);
+		assertThat(ids).hasSize(notes.size());
+
+		CursorIterator<Note> iterator = Select.from(Note.class).iterate(true);
+		Note first = iterator.next();
+		assertThat(first.id).isEqualTo(notes.get(0).id);
+		if (iterator.hasNext()) {
+			assertThat(iterator.next()).isSameAs(first);
+		}
+		iterator.close();
+		assertThat(iterator.hasNext()).isFalse();
+	}
+
+	@Test
+	public void testCreateUri() {
+		assertThat(OllieProvider.createUri(Note.class).getPathSegments()).containsExactly("notes");
+		assertThat(OllieProvider.createUri(NoteTag.class, 1L).toString())
+				.isEqualTo(OllieProvider.createUri(NoteTag.class) + "/1");
+	}
+
+	@Test
+	public void testProviderBulkInsert() {
+		long count = Select.columns("COUNT(*)").from(Tag.class).fetchLong();
+
+		ContentValues[] values = new ContentValues[3];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new ContentValues();
+			values[i].put("name", "bulk " + i);
+		}
+
+		int inserted = Robolectric.application.getContentResolver().bulkInsert(OllieProvider.createUri(Tag.class),
+				values);
+		assertThat(inserted).isEqualTo(values.length);
+		assertThat(Select.columns("COUNT(*)").from(Tag.class).fetchLong()).isEqualTo(count + values.length);
+	}
+
+	@Test
+	public void testTransactionNotifiesOncePerTable() {
+		final List<String> changes = new ArrayList<String>();
+		Subscription subscription = InvalidationTracker.observe("notes").subscribe(new Action1<String>() {
+			@Override
+			public void call(String table) {
+				changes.add(table);
+			}
+		});
+
+		Ollie.beginTransaction();
+		try {
+			for (int i = 0; i < 3; i++) {
+				Note note = new Note();
+				note.body = "transaction";
+				note.save();
+			}
+			assertThat(changes).isEmpty();
+			Ollie.setTransactionSuccessful();
+		} finally {
+			Ollie.endTransaction();
+		}
+		assertThat(changes).containsExactly("notes");
+
+		// Rolled back changes are not delivered
+		Ollie.beginTransaction();
+		try {
+			Note note = new Note();
+			note.body = "rollback";
+			note.save();
+		} finally {
+			Ollie.endTransaction();
+		}
+		assertThat(changes).hasSize(1);
+
+		subscription.unsubscribe();
+	}
+
+	@Test
+	public void testObserveLive() throws InterruptedException {
+		final BlockingQueue<List<Note>> results = new LinkedBlockingQueue<List<Note>>();
+		final Subscription subscription = Select.from(Note.class).observeLive().subscribe(new Action1<List<Note>>() {
+			@Override
+			public void call(List<Note> notes) {
+				results.add(notes);
+			}
+		});
+
+		try {
+			int count = results.poll(5, TimeUnit.SECONDS).size();
+
+			Note note = new Note();
+			note.body = "live";
+			note.save();
+
+			assertThat(results.poll(5, TimeUnit.SECONDS)).hasSize(count + 1);
+		} finally {
+			subscription.unsubscribe();
+		}
+	}
+
+	@Test
+	public void testQueryPlanDiagnostics() {
+		QueryPlanDiagnostics.setEnabled(true);
+		try {
+			ResultQuery<Note> scan = Select.from(Note.class).where("body=?", "Testing");
+			scan.fetch();
+			assertThat(QueryPlanDiagnostics.getFlaggedSteps(scan.getSql())).isNotEmpty();
+
+			ResultQuery<Note> search = Select.from(Note.class).where(Model._ID + "=?", 1);
+			search.fetch();
+			assertThat(QueryPlanDiagnostics.getFlaggedSteps(search.getSql())).isEmpty();
+		} finally {
+			QueryPlanDiagnostics.setEnabled(false);
+		}
+	}
+
 	@Test
 	public void testFetchValue() {
 		long sum = Select.columns("SUM(date)").from(Note.class).fetchValue(long.class);
@@ -342,6 +792,10 @@ public class OllieTest {
 
 		int count = Select.columns("COUNT(*)").from(Note.class).fetchValue(int.class);
 		assertThat(count).isGreaterThan(0);
+
+		assertThat(Select.columns("COUNT(*)").from(Note.class).fetchLong()).isEqualTo(count);
+		assertThat(Select.columns("SUM(date)").from(Note.class).fetchDouble()).isEqualTo((double) sum);
+		assertThat(Select.columns("COUNT(*)").from(Note.class).fetchString()).isEqualTo(String.valueOf(count));
 	}
 
 	@Test
@@ -367,4 +821,52 @@ public class OllieTest {
 
 		assertThat(note.id).isNotNull();
 	}
-}
\ No newline at end of file
+
+	// Runs the writer on a second thread while the first holds a transaction, so that the writer waits for the
+	// connection while the transaction writes the same model. Fails if either thread does not finish.
+	private static void runAlongsideTransaction(final Runnable inTransaction, final Runnable writer)
+			throws InterruptedException {
+		final CountDownLatch transactionBegun = new CountDownLatch(1);
+		final CountDownLatch writerStarted = new CountDownLatch(1);
+
+		final Thread transactionThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Ollie.beginTransaction();
+				try {
+					transactionBegun.countDown();
+					writerStarted.await();
+					// Give the writer time to block on the connection.
+					Thread.sleep(100);
+					inTransaction.run();
+					Ollie.setTransactionSuccessful();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					Ollie.endTransaction();
+				}
+			}
+		});
+		final Thread writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					transactionBegun.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				writerStarted.countDown();
+				writer.run();
+			}
+		});
+
+		transactionThread.start();
+		writerThread.start();
+		transactionThread.join(5000);
+		writerThread.join(5000);
+
+		assertThat(transactionThread.isAlive()).isFalse();
+		assertThat(writerThread.isAlive()).isFalse();
+	}
+}
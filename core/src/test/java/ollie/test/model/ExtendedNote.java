@@ -16,7 +16,9 @@
 
 package ollie.test.model;
 
+import ollie.Lazy;
 import ollie.annotation.Column;
+import ollie.annotation.ForeignKey;
 import ollie.annotation.Table;
 import ollie.test.model.Note;
 
@@ -24,4 +26,7 @@ import ollie.test.model.Note;
 public class ExtendedNote extends Note {
 	@Column("extendedBody")
 	public String extendedBody;
+	@Column("tag")
+	@ForeignKey
+	public Lazy<Tag> tag;
 }
@@ -19,11 +19,12 @@ package ollie.test.model;
 import ollie.Model;
 import ollie.annotation.Column;
 import ollie.annotation.ForeignKey;
+import ollie.annotation.Index;
 import ollie.annotation.Table;
 
 import static ollie.annotation.ForeignKey.ReferentialAction.CASCADE;
 
-@Table("noteTags")
+@Table(value = "noteTags", indices = @Index(value = {NoteTag.Note, NoteTag.Tag}, unique = true))
 public class NoteTag extends Model {
 	public static final String Note = "note";
 	public static final String Tag = "tag";
@@ -33,5 +34,6 @@ public class NoteTag extends Model {
 	public Note note;
 	@Column(Tag)
 	@ForeignKey(onDelete = CASCADE)
+	@Index
 	public Tag tag;
 }
\ No newline at end of file
@@ -17,15 +17,19 @@
 package ollie.test.model;
 
 import ollie.Model;
+import ollie.annotation.Cache;
 import ollie.annotation.Column;
 import ollie.annotation.NotNull;
 import ollie.annotation.Table;
+import ollie.annotation.Unique;
 
 @Table("tags")
+@Cache(size = 64)
 public class Tag extends Model {
 	public static final String Name = "name";
 
 	@Column(Name)
 	@NotNull
+	@Unique
 	public String name;
 }
\ No newline at end of file